@@ -0,0 +1,88 @@
+package net.william.commandscheduler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+
+/**
+ * Writes generated config files for the benchmarks and loads them, so every
+ * benchmark starts from the same files a server with that many schedulers
+ * would have. Files go to config/commandscheduler under the working directory
+ * of the benchmark JVM.
+ */
+final class BenchData {
+
+  static final Path DIR = Paths.get("config", "commandscheduler");
+
+  private static final String[] UNITS = { "ticks", "seconds", "minutes", "hours" };
+
+  private BenchData() {
+  }
+
+  /**
+   * Generates the given number of interval and clock-based schedulers, writes
+   * them to the config files and loads them like a server boot would.
+   */
+  static void load(int intervals, int clockBased, boolean configCache) throws IOException {
+    Files.createDirectories(DIR);
+    for (String name : List.of("intervals.json5", "clock_based.json5", "once_at_boot.json5", "journal.log",
+        "state.dat")) {
+      Files.deleteIfExists(DIR.resolve(name));
+    }
+    Files.deleteIfExists(DIR.resolveSibling("commandscheduler.cache"));
+
+    write("settings.json5", "{ \"configCache\": " + configCache + ", \"stateCheckpointSeconds\": 0 }");
+    write("intervals.json5", toJson(intervals(intervals)));
+    write("clock_based.json5", toJson(clockBased(clockBased)));
+    write("once_at_boot.json5", "[]");
+
+    ConfigHandler.loadAllCommands();
+    // Lets the cache be built before anything is measured
+    ConfigHandler.getPersister().awaitIdle();
+    if (configCache) {
+      ConfigHandler.loadAllCommands();
+    }
+  }
+
+  static JsonArray intervals(int count) {
+    SplittableRandom random = new SplittableRandom(count);
+    JsonArray array = new JsonArray();
+    for (int i = 0; i < count; i++) {
+      String unit = UNITS[random.nextInt(UNITS.length)];
+      int period = unit.equals("ticks") ? 1 + random.nextInt(1200) : 1 + random.nextInt(60);
+      Interval ic = new Interval("interval" + i, List.of(List.of("say interval " + i)), period, unit, false, false);
+      ic.setDescription("Generated interval " + i);
+      array.add(SchedulerAdapters.INTERVAL.toJsonTree(ic));
+    }
+    return array;
+  }
+
+  static JsonArray clockBased(int count) {
+    SplittableRandom random = new SplittableRandom(-count);
+    JsonArray array = new JsonArray();
+    for (int i = 0; i < count; i++) {
+      ClockBased cc = new ClockBased("clock" + i, List.of("say clock " + i), List.of(), false);
+      cc.setDescription("Generated clock-based " + i);
+      for (int t = 0; t < 1 + random.nextInt(4); t++) {
+        cc.addTime(random.nextInt(24), random.nextInt(60));
+      }
+      array.add(SchedulerAdapters.CLOCK_BASED.toJsonTree(cc));
+    }
+    return array;
+  }
+
+  private static String toJson(JsonArray array) {
+    return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(array);
+  }
+
+  private static void write(String name, String content) throws IOException {
+    Files.writeString(DIR.resolve(name), content, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,64 @@
+package net.william.commandscheduler;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading and saving intervals.json5 and clock_based.json5 with the given
+ * number of schedulers in each. Loads are measured with and without the
+ * binary config cache. Saves measure what the I/O thread does for one file:
+ * the snapshot of the registry and the atomic write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigBenchmark {
+
+  @Param({ "100", "10000", "100000" })
+  public int schedulers;
+
+  @Param({ "false", "true" })
+  public boolean configCache;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchData.load(schedulers, schedulers, configCache);
+  }
+
+  @Benchmark
+  public List<Interval> loadIntervals() {
+    return ConfigHandler.loadIntervalCommands();
+  }
+
+  @Benchmark
+  public List<ClockBased> loadClockBased() {
+    return ConfigHandler.loadClockBasedCommands();
+  }
+
+  @Benchmark
+  public ConfigCache.Stamp saveIntervals() {
+    return ConfigHandler.writeAtomically(ConfigHandler.getPath(Types.INTERVAL),
+        ConfigHandler.toJson(Types.INTERVAL, ConfigHandler.snapshot(Types.INTERVAL)));
+  }
+
+  @Benchmark
+  public ConfigCache.Stamp saveClockBased() {
+    return ConfigHandler.writeAtomically(ConfigHandler.getPath(Types.CLOCKBASED),
+        ConfigHandler.toJson(Types.CLOCKBASED, ConfigHandler.snapshot(Types.CLOCKBASED)));
+  }
+}
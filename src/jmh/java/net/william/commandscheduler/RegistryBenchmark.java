@@ -0,0 +1,70 @@
+package net.william.commandscheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lookups and ID checks against a registry with the given number of interval
+ * and of clock-based schedulers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark {
+
+  @Param({ "100", "10000", "100000" })
+  public int schedulers;
+
+  private String[] ids;
+  private int next;
+  private List<Scheduler> all;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchData.load(schedulers, schedulers, false);
+    ids = ConfigHandler.getAllSchedulerIDs().toArray(new String[0]);
+    all = new ArrayList<>();
+    all.addAll(ConfigHandler.getIntervalCommands());
+    all.addAll(ConfigHandler.getClockBasedCommands());
+  }
+
+  @Benchmark
+  public Scheduler getCommandById() {
+    String id = ids[next];
+    next = next + 1 == ids.length ? 0 : next + 1;
+    return ConfigHandler.getCommandById(id);
+  }
+
+  @Benchmark
+  public void getAllSchedulerIDs(Blackhole blackhole) {
+    Collection<String> ids = ConfigHandler.getAllSchedulerIDs();
+    for (String id : ids) {
+      blackhole.consume(id);
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public boolean checkForDuplicateIDs() {
+    // IDs are unique, so the list is only read
+    return ConfigHandler.checkForDuplicateIDs(all);
+  }
+}
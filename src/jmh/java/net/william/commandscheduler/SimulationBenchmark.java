@@ -0,0 +1,58 @@
+package net.william.commandscheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole simulated day at 20 TPS, 1 728 000 ticks of the scheduling engine
+ * on a SimulatedClock, with the given number of interval and of clock-based
+ * schedulers. Shows how long checking a day of schedule behaviour takes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SimulationBenchmark {
+
+  private static final int TICKS_PER_DAY = (int) (24 * 60 * 60 * 1000 / SimulatedClock.MILLIS_PER_TICK);
+
+  @Param({ "100", "10000" })
+  public int schedulers;
+
+  private SimulatedClock clock;
+  private SchedulingEngine engine;
+  private long dispatched;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchData.load(schedulers, schedulers, false);
+    clock = new SimulatedClock(System.currentTimeMillis());
+    ConfigHandler.setClock(clock);
+    engine = new SchedulingEngine(ConfigHandler.getEngineState(), clock, (owner, command) -> {
+      dispatched++;
+      return true;
+    });
+  }
+
+  @Benchmark
+  public long day() {
+    for (int i = 0; i < TICKS_PER_DAY; i++) {
+      clock.advanceTick();
+      engine.tick();
+    }
+    return dispatched;
+  }
+}
@@ -0,0 +1,63 @@
+package net.william.commandscheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One tick of the scheduling engine with the given number of interval and of
+ * clock-based schedulers, on a SimulatedClock that moves 50 ms per tick.
+ * Commands that come due go to a sink that only counts them, which leaves the
+ * cost of the scheduling itself. Clock-based schedulers are only evaluated
+ * when a minute starts, so tick() shows their share in the average over many
+ * ticks and minuteTick() moves a whole minute each time to show the tick that
+ * evaluates them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TickBenchmark {
+
+  @Param({ "100", "10000", "100000" })
+  public int schedulers;
+
+  private SimulatedClock clock;
+  private SchedulingEngine engine;
+  private long dispatched;
+
+  @Setup
+  public void setup() throws Exception {
+    BenchData.load(schedulers, schedulers, false);
+    clock = new SimulatedClock(System.currentTimeMillis());
+    ConfigHandler.setClock(clock);
+    engine = new SchedulingEngine(ConfigHandler.getEngineState(), clock, (owner, command) -> {
+      dispatched++;
+      return true;
+    });
+  }
+
+  @Benchmark
+  public void tick() {
+    clock.advanceTick();
+    engine.tick();
+  }
+
+  @Benchmark
+  public void minuteTick() {
+    clock.advanceMillis(60_000);
+    engine.tick();
+  }
+}
@@ -11,6 +11,11 @@ public class AtBoot extends Scheduler {
         super(ID, true, command);
     }
 
+    @Override
+    public Types getType() {
+        return Types.ATBOOT;
+    }
+
     public boolean isExpired() {
         return expired;
     }
@@ -19,6 +24,10 @@ public class AtBoot extends Scheduler {
         this.expired = true;
     }
 
+    void keepProgress(AtBoot old) {
+        this.expired = old.expired;
+    }
+
     @Override
     public String toString() {
         return String.format("OnceAtBootCommand{id='%s', active=%s, command='%s', expired=%s}", getID(), isActive(),
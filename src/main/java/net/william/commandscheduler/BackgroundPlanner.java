@@ -0,0 +1,376 @@
+package net.william.commandscheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Interval timer that works out what is due on a background thread.
+ *
+ * The planner thread owns its own timing wheel and runs up to a number of
+ * ticks ahead of the server, but never further than the last tick the server
+ * actually started, so it follows server ticks and not wall time. Every tick
+ * with due intervals is published as a batch through a lock-free SPSC queue,
+ * and the server thread only drains those batches and dispatches them.
+ *
+ * The server thread stays the authority on when an interval is due. It keeps
+ * Interval.dueTick itself, and an entry from a batch only runs if it still
+ * matches, so batches planned before an activate, deactivate or remove can
+ * never run something at the wrong tick. Changes are sent to the planner,
+ * which publishes extra batches for ticks it had already planned past.
+ *
+ * Intervals always run on their exact tick, the server thread never waits
+ * for the planner. If the planner hasn't planned the current tick yet, the
+ * server thread looks through the armed intervals for the ones due now. If
+ * it has, only intervals whose changes the planner hasn't applied yet are
+ * looked at. Batches for ticks that already passed are dropped, whatever
+ * was due in them ran on its tick.
+ */
+public class BackgroundPlanner implements IntervalTimer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  private static final int SCHEDULE = 0;
+  private static final int REMOVE = 1;
+  private static final int CLEAR = 2;
+
+  private static final class Op {
+    final int kind;
+    final Interval ic;
+    final long due;
+    final int generation;
+    long seq;
+
+    Op(int kind, Interval ic, long due, int generation) {
+      this.kind = kind;
+      this.ic = ic;
+      this.due = due;
+      this.generation = generation;
+    }
+  }
+
+  private static final class Batch {
+    final long tick;
+    final int generation;
+    Interval[] items = new Interval[4];
+    int count = 0;
+    Batch next;
+
+    Batch(long tick, int generation) {
+      this.tick = tick;
+      this.generation = generation;
+    }
+
+    void add(Interval ic) {
+      if (count == items.length) {
+        Interval[] grown = new Interval[count * 2];
+        System.arraycopy(items, 0, grown, 0, count);
+        items = grown;
+      }
+      items[count++] = ic;
+    }
+  }
+
+  private final int lookahead;
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  // Server thread -> planner
+  private final ConcurrentLinkedQueue<Op> ops = new ConcurrentLinkedQueue<>();
+  private volatile long serverTick;
+  private volatile long opsSubmitted = 0;
+
+  // Planner -> server thread
+  private final SpscQueue<Batch> batches;
+  private volatile long plannedUpTo;
+  private volatile long opsApplied = 0;
+
+  // Only touched by the server thread
+  private long currentTick;
+  private int generation = 0;
+  private final Batch[] pending;
+  private final int pendingMask;
+  // Armed intervals, and schedule ops the planner may not have applied yet
+  private final Set<Interval> armed = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final ArrayDeque<Op> unapplied = new ArrayDeque<>();
+  private final List<Interval> due = new ArrayList<>();
+  private long unplannedTicks = 0;
+
+  // Only touched by the planner thread
+  private final IntervalWheel wheel;
+  private int plannerGeneration = 0;
+  private Batch planning;
+
+  public BackgroundPlanner(long currentTick, int lookahead) {
+    this(currentTick, lookahead, true);
+  }
+
+  /**
+   * Tests can leave the planner thread stopped and start it later.
+   */
+  BackgroundPlanner(long currentTick, int lookahead, boolean start) {
+    this.lookahead = Math.max(1, lookahead);
+    this.currentTick = currentTick;
+    this.serverTick = currentTick;
+    this.plannedUpTo = currentTick;
+    this.wheel = new IntervalWheel(currentTick);
+
+    int ringSize = Integer.highestOneBit(this.lookahead) << 2;
+    this.pending = new Batch[ringSize];
+    this.pendingMask = ringSize - 1;
+    this.batches = new SpscQueue<>(ringSize * 4);
+
+    this.thread = new Thread(this::run, "CommandScheduler-Planner");
+    this.thread.setDaemon(true);
+    if (start) {
+      this.thread.start();
+    }
+  }
+
+  void startPlanner() {
+    thread.start();
+  }
+
+  // --- Server thread ---
+
+  @Override
+  public void schedule(Interval ic) {
+    long due = IntervalWheel.firstDue(ic, currentTick);
+    ic.dueTick = due;
+    armed.add(ic);
+    Op op = new Op(SCHEDULE, ic, due, generation);
+    submit(op);
+    unapplied.add(op);
+  }
+
+  @Override
+  public void unschedule(Interval ic) {
+    if (ic.dueTick > currentTick) {
+      ic.setTickCounter((int) Math.max(0, ic.getPeriodTicks() - (ic.dueTick - currentTick)));
+    }
+    ic.dueTick = -1;
+    armed.remove(ic);
+    submit(new Op(REMOVE, ic, 0, generation));
+  }
+
+  @Override
+  public int progressOf(Interval ic) {
+    if (ic.dueTick <= currentTick) {
+      return ic.getTickCounter();
+    }
+    return (int) Math.max(0, ic.getPeriodTicks() - (ic.dueTick - currentTick));
+  }
+
+  @Override
+  public void clear() {
+    generation++;
+    armed.clear();
+    unapplied.clear();
+    submit(new Op(CLEAR, null, 0, generation));
+  }
+
+  @Override
+  public long getCurrentTick() {
+    return currentTick;
+  }
+
+  /**
+   * Ticks the planner hadn't planned in time, so the server thread worked
+   * out what was due itself.
+   */
+  public long getUnplannedTicks() {
+    return unplannedTicks;
+  }
+
+  private void submit(Op op) {
+    op.seq = ++opsSubmitted;
+    ops.add(op);
+    LockSupport.unpark(thread);
+  }
+
+  @Override
+  public void advance(Consumer<Interval> onDue) {
+    long tick = ++currentTick;
+    serverTick = tick;
+    LockSupport.unpark(thread);
+
+    // Read before the batches are drained. The planner publishes its batches
+    // before it counts a tick as planned or an op as applied, so whatever
+    // these cover is in the queue by now.
+    long applied = opsApplied;
+    boolean planned = plannedUpTo >= tick;
+
+    while (!unapplied.isEmpty() && unapplied.peek().seq <= applied) {
+      unapplied.poll();
+    }
+    if (!planned) {
+      unplannedTicks++;
+      for (Interval ic : armed) {
+        if (ic.dueTick == tick) {
+          due.add(ic);
+        }
+      }
+    } else if (!unapplied.isEmpty()) {
+      for (Op op : unapplied) {
+        if (op.ic.dueTick == tick) {
+          due.add(op.ic);
+        }
+      }
+    }
+
+    Batch batch;
+    while ((batch = batches.poll()) != null) {
+      if (batch.generation != generation || batch.tick < tick) {
+        // Whatever was due in a past tick already ran on it
+        continue;
+      }
+      int slot = (int) batch.tick & pendingMask;
+      batch.next = pending[slot];
+      pending[slot] = batch;
+    }
+
+    int slot = (int) tick & pendingMask;
+    Batch previous = null;
+    batch = pending[slot];
+    while (batch != null) {
+      Batch next = batch.next;
+      if (batch.tick == tick) {
+        if (previous == null) {
+          pending[slot] = next;
+        } else {
+          previous.next = next;
+        }
+        batch.next = null;
+        dispatch(batch, onDue);
+      } else {
+        previous = batch;
+      }
+      batch = next;
+    }
+
+    for (int i = 0; i < due.size(); i++) {
+      dispatch(due.get(i), tick, onDue);
+    }
+    due.clear();
+  }
+
+  private void dispatch(Batch batch, Consumer<Interval> onDue) {
+    for (int i = 0; i < batch.count; i++) {
+      dispatch(batch.items[i], batch.tick, onDue);
+    }
+  }
+
+  /**
+   * Runs the interval if it is still due on the tick. Whichever of the batch
+   * and the server thread gets to it first runs it, the re-arm makes the
+   * other one skip it.
+   */
+  private void dispatch(Interval ic, long tick, Consumer<Interval> onDue) {
+    if (!ic.isActive() || ic.dueTick != tick) {
+      return;
+    }
+    onDue.accept(ic);
+    // Same re-arm the planner did, unless the consumer changed it
+    if (ic.dueTick == tick) {
+      ic.dueTick = ic.nextDueAfter(tick);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    running = false;
+    LockSupport.unpark(thread);
+    // The planner must be done with the intervals before another timer gets them
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // --- Planner thread ---
+
+  private void run() {
+    while (running) {
+      try {
+        boolean worked = applyOps();
+        long target = serverTick + lookahead;
+        while (wheel.getCurrentTick() < target && ops.isEmpty()) {
+          planNextTick();
+          worked = true;
+        }
+        if (!worked) {
+          LockSupport.parkNanos(1_000_000L);
+        }
+      } catch (Exception e) {
+        LOGGER.error("Interval planner failed: {}", e.getMessage());
+      }
+    }
+  }
+
+  private boolean applyOps() {
+    boolean applied = false;
+    Op op;
+    while ((op = ops.poll()) != null) {
+      switch (op.kind) {
+        case SCHEDULE -> scheduleInPlanner(op.ic, op.due, op.generation);
+        case REMOVE -> wheel.remove(op.ic);
+        case CLEAR -> {
+          wheel.clear();
+          plannerGeneration = op.generation;
+        }
+        default -> {
+        }
+      }
+      opsApplied++;
+      applied = true;
+    }
+    return applied;
+  }
+
+  private void scheduleInPlanner(Interval ic, long due, int opGeneration) {
+    if (opGeneration != plannerGeneration) {
+      return;
+    }
+    // Already planned past this tick, so publish those runs as extra batches
+    long planned = wheel.getCurrentTick();
+    while (due <= planned) {
+      Batch extra = new Batch(due, plannerGeneration);
+      extra.add(ic);
+      publish(extra);
+      due = ic.nextDueAfter(due);
+    }
+    wheel.scheduleAt(ic, due);
+  }
+
+  private final Consumer<Interval> collect = ic -> planning.add(ic);
+
+  private void planNextTick() {
+    long tick = wheel.getCurrentTick() + 1;
+    planning = new Batch(tick, plannerGeneration);
+    wheel.advance(collect);
+    if (planning.count > 0) {
+      publish(planning);
+    }
+    planning = null;
+    plannedUpTo = tick;
+  }
+
+  private void publish(Batch batch) {
+    while (!batches.offer(batch)) {
+      if (!running) {
+        return;
+      }
+      LockSupport.parkNanos(100_000L);
+    }
+  }
+}
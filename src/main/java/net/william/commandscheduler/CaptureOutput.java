@@ -0,0 +1,60 @@
+package net.william.commandscheduler;
+
+import net.minecraft.server.command.CommandOutput;
+import net.minecraft.text.Text;
+
+/**
+ * Command output that keeps what a command sends back instead of printing
+ * it, for schedulers with "output": "capture". Every capturing command
+ * source shares one instance, the server thread clears it before a command
+ * runs and takes the text afterwards.
+ */
+public class CaptureOutput implements CommandOutput {
+
+  // Anything past this is cut off, so a chatty command can't pin much memory
+  static final int MAX_CHARS = 1024;
+
+  private final StringBuilder text = new StringBuilder();
+
+  public void begin() {
+    text.setLength(0);
+  }
+
+  /**
+   * The text sent since begin, one message per line.
+   */
+  public String take() {
+    String captured = text.toString();
+    text.setLength(0);
+    return captured;
+  }
+
+  @Override
+  public void sendMessage(Text message) {
+    if (text.length() >= MAX_CHARS) {
+      return;
+    }
+    if (text.length() > 0) {
+      text.append('\n');
+    }
+    text.append(message.getString());
+    if (text.length() > MAX_CHARS) {
+      text.setLength(MAX_CHARS);
+    }
+  }
+
+  @Override
+  public boolean shouldReceiveFeedback() {
+    return true;
+  }
+
+  @Override
+  public boolean shouldTrackOutput() {
+    return false;
+  }
+
+  @Override
+  public boolean shouldBroadcastConsoleToOps() {
+    return false;
+  }
+}
@@ -2,7 +2,7 @@ package net.william.commandscheduler;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ClockBased extends Scheduler {
 
@@ -11,6 +11,8 @@ public class ClockBased extends Scheduler {
     private List<String> commands;                // flat list
     private List<List<String>> commandGroups;     // grouped commands
     private boolean random;                       // random selection
+    private Boolean spread;                       // null follows the global setting
+    private Misfire misfire;                      // null follows the global setting
 
     private transient int lastRunHour = -1;
     private transient int lastRunMinute = -1;
@@ -33,6 +35,11 @@ public class ClockBased extends Scheduler {
         this.random = random;
     }
 
+    @Override
+    public Types getType() {
+        return Types.CLOCKBASED;
+    }
+
     // --- Times ---
     public List<int[]> getTimes() {
         return times;
@@ -69,18 +76,26 @@ public class ClockBased extends Scheduler {
         return times.removeIf(t -> t[0] == hour && t[1] == minute);
     }
 
+    @Override
+    ClockBased copy() {
+        // The only list changed in place
+        ClockBased copy = (ClockBased) super.copy();
+        copy.times = new ArrayList<>(times);
+        return copy;
+    }
+
     // --- Random + command handling ---
     public String getCommand() {
         if (commands != null && !commands.isEmpty()) {
             if (random) {
-                return commands.get(new Random().nextInt(commands.size()));
+                return commands.get(ThreadLocalRandom.current().nextInt(commands.size()));
             }
             return commands.get(0);
         }
 
         if (commandGroups != null && !commandGroups.isEmpty()) {
             List<String> group = random
-                    ? commandGroups.get(new Random().nextInt(commandGroups.size()))
+                    ? commandGroups.get(ThreadLocalRandom.current().nextInt(commandGroups.size()))
                     : commandGroups.get(0);
             return group.isEmpty() ? super.getCommand() : group.get(0);
         }
@@ -95,7 +110,7 @@ public class ClockBased extends Scheduler {
     public List<String> getCommandGroup() {
         if (commandGroups != null && !commandGroups.isEmpty()) {
             if (random) {
-                return commandGroups.get(new Random().nextInt(commandGroups.size()));
+                return commandGroups.get(ThreadLocalRandom.current().nextInt(commandGroups.size()));
             }
             return commandGroups.get(0);
         }
@@ -110,10 +125,59 @@ public class ClockBased extends Scheduler {
         return commandGroups;
     }
 
+    @Override
+    public List<String> getAllCommands() {
+        List<String> all = new ArrayList<>(commands);
+        for (List<String> group : commandGroups) {
+            all.addAll(group);
+        }
+        if (super.getCommand() != null) {
+            all.add(super.getCommand());
+        }
+        return all;
+    }
+
     public boolean isRandom() {
         return random;
     }
 
+    // --- Load spreading ---
+    public Boolean getSpread() {
+        return spread;
+    }
+
+    public void setSpread(Boolean spread) {
+        this.spread = spread;
+    }
+
+    public boolean isSpread() {
+        return spread != null ? spread : ConfigHandler.getSettings().isSpreadLoad();
+    }
+
+    // --- Missed runs ---
+    public Misfire getMisfire() {
+        return misfire;
+    }
+
+    public void setMisfire(Misfire misfire) {
+        this.misfire = misfire;
+    }
+
+    public Misfire getMisfirePolicy() {
+        return misfire != null ? misfire : ConfigHandler.getSettings().getMisfire();
+    }
+
+    /**
+     * How far into its minute this scheduler runs. Spread schedulers get a
+     * stable tick within the minute, the rest run at its start.
+     */
+    public long getMinuteOffsetMillis() {
+        if (!isSpread()) {
+            return 0;
+        }
+        return Math.floorMod(spreadHash(ID), TimeUnit.TICKS_PER_MINUTE) * (1000L / TimeUnit.TICKS_PER_SECOND);
+    }
+
     // --- Execution tracking ---
     public int getLastRunHour() {
         return lastRunHour;
@@ -123,6 +187,24 @@ public class ClockBased extends Scheduler {
         return lastRunMinute;
     }
 
+    /**
+     * Carries over the last run of the scheduler this one replaces, so an
+     * edit in the minute it ran doesn't run it again.
+     */
+    void keepProgress(ClockBased old) {
+        this.lastRunHour = old.lastRunHour;
+        this.lastRunMinute = old.lastRunMinute;
+    }
+
+    /**
+     * Puts back the last run saved in the runtime state file, so a restart
+     * in the minute it ran doesn't run it again.
+     */
+    void restoreLastRun(int hour, int minute) {
+        this.lastRunHour = hour;
+        this.lastRunMinute = minute;
+    }
+
     public boolean run(int hour, int minute) {
         if (this.lastRunHour == hour && this.lastRunMinute == minute) {
             return false; // Already ran this minute
@@ -136,8 +218,8 @@ public class ClockBased extends Scheduler {
     @Override
     public String toString() {
         return String.format(
-                "ClockBasedCommand{id='%s', active=%s, times=%s, random=%s, commands=%s, groups=%s}",
-                ID, active, times, random, commands, commandGroups
+                "ClockBasedCommand{id='%s', active=%s, times=%s, random=%s, spread=%s, misfire=%s, commands=%s, groups=%s}",
+                ID, active, times, random, spread, misfire, commands, commandGroups
         );
     }
 }
@@ -0,0 +1,243 @@
+package net.william.commandscheduler;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Minute-of-day index for active clock-based schedulers.
+ *
+ * Each of the 1440 minutes of a day has a bucket with the schedulers that
+ * should run in it, and the index keeps a single wall-clock deadline for the
+ * next minute that has anything in it. The tick loop only has to compare the
+ * current time against that deadline. Any change to the index resets the
+ * deadline, so the current minute is looked at again on the next tick.
+ *
+ * Buckets are sorted by how far into the minute a scheduler runs. Spread
+ * schedulers have an offset within the minute, and the deadline then points
+ * at the next offset that hasn't been reached yet.
+ */
+public class ClockIndex {
+
+  public static final int MINUTES_PER_DAY = 24 * 60;
+  private static final long MILLIS_PER_MINUTE = 60_000L;
+  // Longer gaps are only looked at for their last week
+  private static final int MAX_MISSED_MINUTES = 7 * MINUTES_PER_DAY;
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private final List<ClockBased>[] buckets = new List[MINUTES_PER_DAY];
+  private final BitSet nonEmpty = new BitSet(MINUTES_PER_DAY);
+
+  private long nextDeadline = 0;
+  private long lastEvaluated = Long.MIN_VALUE;
+  private int modCount = 0;
+
+  // UTC offset of the system zone, valid until the next DST transition
+  private long offsetMillis;
+  private long offsetValidFrom = Long.MAX_VALUE;
+  private long offsetValidUntil = Long.MIN_VALUE;
+
+  public static int minuteOfDay(int hour, int minute) {
+    return hour * 60 + minute;
+  }
+
+  /**
+   * True if the current minute has to be evaluated. Also true if the system
+   * clock went backwards since the last evaluation.
+   */
+  public boolean isDue(long nowMillis) {
+    return nowMillis >= nextDeadline || nowMillis < lastEvaluated;
+  }
+
+  public long getNextDeadline() {
+    return nextDeadline;
+  }
+
+  public void add(ClockBased cc, int hour, int minute) {
+    if (!cc.isActive())
+      return;
+
+    int m = minuteOfDay(hour, minute);
+    List<ClockBased> bucket = buckets[m];
+    if (bucket == null) {
+      bucket = new ArrayList<>(2);
+      buckets[m] = bucket;
+    }
+    if (!bucket.contains(cc)) {
+      long offset = cc.getMinuteOffsetMillis();
+      int index = bucket.size();
+      while (index > 0 && bucket.get(index - 1).getMinuteOffsetMillis() > offset) {
+        index--;
+      }
+      bucket.add(index, cc);
+      nonEmpty.set(m);
+      changed();
+    }
+  }
+
+  public void remove(ClockBased cc, int hour, int minute) {
+    int m = minuteOfDay(hour, minute);
+    List<ClockBased> bucket = buckets[m];
+    if (bucket != null && bucket.remove(cc)) {
+      if (bucket.isEmpty())
+        nonEmpty.clear(m);
+      changed();
+    }
+  }
+
+  public void addAll(ClockBased cc) {
+    for (int[] t : cc.getTimes()) {
+      add(cc, t[0], t[1]);
+    }
+  }
+
+  public void removeAll(ClockBased cc) {
+    for (int[] t : cc.getTimes()) {
+      remove(cc, t[0], t[1]);
+    }
+  }
+
+  public void rebuild(List<ClockBased> commands) {
+    for (int m = nonEmpty.nextSetBit(0); m >= 0; m = nonEmpty.nextSetBit(m + 1)) {
+      buckets[m].clear();
+    }
+    nonEmpty.clear();
+    for (ClockBased cc : commands) {
+      addAll(cc);
+    }
+    changed();
+  }
+
+  /**
+   * Evaluates the local minute that the given wall-clock time falls in.
+   */
+  public void evaluate(long nowMillis, Consumer<ClockBased> onDue) {
+    int m = localMinuteOfDay(nowMillis);
+    evaluate(nowMillis, m / 60, m % 60, onDue);
+  }
+
+  /**
+   * Local minute of day without going through LocalTime. The zone offset is
+   * only looked up again once the cached one passes a DST transition, so the
+   * steady state doesn't allocate.
+   */
+  public int localMinuteOfDay(long nowMillis) {
+    if (nowMillis >= offsetValidUntil || nowMillis < offsetValidFrom) {
+      refreshOffset(nowMillis);
+    }
+    long localMinutes = Math.floorDiv(nowMillis + offsetMillis, MILLIS_PER_MINUTE);
+    return (int) Math.floorMod(localMinutes, (long) MINUTES_PER_DAY);
+  }
+
+  private void refreshOffset(long nowMillis) {
+    Instant instant = Instant.ofEpochMilli(nowMillis);
+    ZoneRules rules = ZoneId.systemDefault().getRules();
+    offsetMillis = rules.getOffset(instant).getTotalSeconds() * 1000L;
+
+    ZoneOffsetTransition previous = rules.previousTransition(instant);
+    ZoneOffsetTransition next = rules.nextTransition(instant);
+    offsetValidFrom = previous != null ? previous.toEpochSecond() * 1000L : Long.MIN_VALUE;
+    offsetValidUntil = next != null ? next.toEpochSecond() * 1000L : Long.MAX_VALUE;
+  }
+
+  /**
+   * Hands every scheduler of the given minute to the consumer, guarded by
+   * ClockBased.run so nothing runs twice in the same minute, and then moves
+   * the deadline to the start of the next minute that has schedulers.
+   */
+  public void evaluate(long nowMillis, int hour, int minute, Consumer<ClockBased> onDue) {
+    int m = minuteOfDay(hour, minute);
+    List<ClockBased> bucket = buckets[m];
+    long minuteStart = nowMillis - Math.floorMod(nowMillis, MILLIS_PER_MINUTE);
+    long elapsed = nowMillis - minuteStart;
+    long pendingOffset = -1;
+
+    if (bucket != null) {
+      int expected = modCount;
+      for (int i = 0; i < bucket.size(); i++) {
+        ClockBased cc = bucket.get(i);
+        long offset = cc.getMinuteOffsetMillis();
+        if (offset > elapsed) {
+          // Sorted by offset, the rest of the bucket is later in this minute
+          pendingOffset = offset;
+          break;
+        }
+        if (cc.isActive() && cc.run(hour, minute)) {
+          onDue.accept(cc);
+        }
+        // A scheduled command changed the index, start over. The run guard
+        // skips the ones that already ran this minute.
+        if (modCount != expected) {
+          expected = modCount;
+          i = -1;
+        }
+      }
+    }
+
+    lastEvaluated = nowMillis;
+    if (pendingOffset >= 0) {
+      nextDeadline = minuteStart + pendingOffset;
+      return;
+    }
+
+    int next = nonEmpty.nextSetBit(m + 1);
+    int steps;
+    if (next >= 0) {
+      steps = next - m;
+    } else {
+      next = nonEmpty.nextSetBit(0);
+      steps = next >= 0 ? MINUTES_PER_DAY - m + next : -1;
+    }
+    nextDeadline = steps > 0 ? minuteStart + steps * MILLIS_PER_MINUTE : Long.MAX_VALUE;
+    // Steps count local minutes, which stop matching epoch time at a DST
+    // transition. Evaluate again there, with the new offset.
+    if (offsetValidUntil > nowMillis) {
+      nextDeadline = Math.min(nextDeadline, offsetValidUntil);
+    }
+  }
+
+  /**
+   * Counts the runs that fell between two ticks: after the previous tick and
+   * before the minute of the current one, which evaluate still covers.
+   * Returns the schedulers in the order they first missed a run, and doesn't
+   * allocate if nothing was missed.
+   */
+  public Map<ClockBased, Integer> missedBetween(long fromMillis, long toMillis) {
+    long end = toMillis - Math.floorMod(toMillis, MILLIS_PER_MINUTE);
+    if (end <= fromMillis) {
+      return Map.of();
+    }
+    long start = Math.max(fromMillis - Math.floorMod(fromMillis, MILLIS_PER_MINUTE),
+        end - MAX_MISSED_MINUTES * MILLIS_PER_MINUTE);
+
+    Map<ClockBased, Integer> missed = null;
+    for (long minuteStart = start; minuteStart < end; minuteStart += MILLIS_PER_MINUTE) {
+      List<ClockBased> bucket = buckets[localMinuteOfDay(minuteStart)];
+      if (bucket == null) {
+        continue;
+      }
+      for (int i = 0; i < bucket.size(); i++) {
+        ClockBased cc = bucket.get(i);
+        if (cc.isActive() && minuteStart + cc.getMinuteOffsetMillis() > fromMillis) {
+          if (missed == null) {
+            missed = new LinkedHashMap<>();
+          }
+          missed.merge(cc, 1, Integer::sum);
+        }
+      }
+    }
+    return missed != null ? missed : Map.of();
+  }
+
+  private void changed() {
+    modCount++;
+    nextDeadline = 0;
+  }
+}
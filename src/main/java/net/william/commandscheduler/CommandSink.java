@@ -0,0 +1,15 @@
+package net.william.commandscheduler;
+
+/**
+ * Executes the commands the scheduling engine dispatches. On a server that is
+ * the command dispatcher, in a simulation anything that records them.
+ */
+@FunctionalInterface
+public interface CommandSink {
+
+  /**
+   * Runs one command of the given scheduler. Returns false if the command
+   * failed; exceptions are caught by the engine and counted as failures too.
+   */
+  boolean execute(Scheduler owner, String command);
+}
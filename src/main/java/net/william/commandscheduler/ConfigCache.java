@@ -0,0 +1,465 @@
+package net.william.commandscheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary copy of the scheduler config files, so a large config doesn't have
+ * to be parsed as json5 on every boot.
+ *
+ * The json5 files stay the source of truth. Every file has its own section,
+ * stamped with the size, modification time and CRC32C of the file it was
+ * built from. A section is only used while all three still match, otherwise
+ * the file is parsed as usual and its section is rebuilt and written on the
+ * I/O thread.
+ *
+ * A section is a string table, holding every ID, command and description
+ * once, followed by length-prefixed records that refer to it by index.
+ *
+ * Reading only happens while the I/O thread is idle, updating and writing
+ * only on the I/O thread or while it is idle.
+ */
+public class ConfigCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  private static final int MAGIC = 0x43534348; // "CSCH"
+  private static final int VERSION = 5;
+
+  // Record flags
+  private static final int ACTIVE = 1;
+  private static final int RANDOM = 1 << 1;
+  private static final int RUN_INSTANTLY = 1 << 2;
+  private static final int SPREAD_SET = 1 << 3;
+  private static final int SPREAD = 1 << 4;
+  private static final int WALL_CLOCK = 1 << 5;
+
+  /**
+   * What a config file looked like when a section was built from it.
+   */
+  public static final class Stamp {
+    final long size;
+    final long modified;
+    final int hash;
+
+    Stamp(long size, long modified, int hash) {
+      this.size = size;
+      this.modified = modified;
+      this.hash = hash;
+    }
+
+    boolean matches(ByteBuffer section) {
+      return section.getLong(0) == size && section.getLong(8) == modified && section.getInt(16) == hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Stamp other && other.size == size && other.modified == modified && other.hash == hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(size) * 31 + hash;
+    }
+  }
+
+  private final Path path;
+  private final ByteBuffer[] sections = new ByteBuffer[Types.values().length];
+  private boolean changed;
+
+  public ConfigCache(Path path) {
+    this.path = path;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Stamps a config file as it is on disk right now.
+   */
+  public static Stamp stamp(Path file) throws IOException {
+    CRC32C crc = new CRC32C();
+    long size = 0;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+      int read;
+      while ((read = channel.read(buffer)) != -1) {
+        size += read;
+        buffer.flip();
+        crc.update(buffer);
+        buffer.clear();
+      }
+    }
+    return new Stamp(size, Files.getLastModifiedTime(file).toMillis(), (int) crc.getValue());
+  }
+
+  /**
+   * Maps the cache file and splits it into its sections, dropping whatever
+   * was read before. A missing or unreadable file just leaves the cache empty.
+   */
+  public void read() {
+    Arrays.fill(sections, null);
+    changed = false;
+    if (!Files.exists(path)) {
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        LOGGER.warn("Ignoring {}, it was written by another version", path.getFileName());
+        return;
+      }
+      int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        int type = buffer.get();
+        int length = buffer.getInt();
+        ByteBuffer section = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        if (type >= 0 && type < sections.length) {
+          sections[type] = section;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Failed to read {}: {}", path.getFileName(), e.getMessage());
+      Arrays.fill(sections, null);
+    }
+  }
+
+  /**
+   * The schedulers of one file, or null if the file changed since its section
+   * was built.
+   */
+  public List<Scheduler> get(Types type, Stamp stamp) {
+    ByteBuffer section = sections[type.ordinal()];
+    if (section == null || section.capacity() < 20 || !stamp.matches(section)) {
+      return null;
+    }
+    try {
+      return decode(type, section.duplicate().position(20));
+    } catch (RuntimeException e) {
+      LOGGER.warn("Ignoring the cached {}, it is damaged: {}", type.name().toLowerCase(), e.getMessage());
+      sections[type.ordinal()] = null;
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the section of one file, see {@link #encode}.
+   */
+  public void put(Types type, byte[] section) {
+    sections[type.ordinal()] = ByteBuffer.wrap(section);
+    changed = true;
+  }
+
+  /**
+   * Writes the cache file if a section changed since it was last read or
+   * written. If the old file is still mapped and the system doesn't allow
+   * replacing it (Windows), the write is tried again with the next change.
+   */
+  public void write() {
+    if (!changed) {
+      return;
+    }
+
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      int count = 0;
+      for (ByteBuffer section : sections) {
+        if (section != null) {
+          count++;
+        }
+      }
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer header = ByteBuffer.allocate(12).putInt(MAGIC).putInt(VERSION).putInt(count).flip();
+        writeFully(channel, header);
+        for (int type = 0; type < sections.length; type++) {
+          if (sections[type] == null) {
+            continue;
+          }
+          ByteBuffer section = sections[type].duplicate().clear();
+          writeFully(channel, ByteBuffer.allocate(5).put((byte) type).putInt(section.remaining()).flip());
+          writeFully(channel, section);
+        }
+      }
+      try {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+      changed = false;
+    } catch (IOException e) {
+      LOGGER.error("Failed to write {}: {}", path.getFileName(), e.getMessage());
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Builds the section for the schedulers of one file, in file order.
+   */
+  public static byte[] encode(Stamp stamp, List<? extends Scheduler> schedulers) {
+    Strings strings = new Strings();
+    Output records = new Output(schedulers.size() * 32);
+    records.writeInt(schedulers.size());
+    for (Scheduler scheduler : schedulers) {
+      // Length is filled in once the record is written
+      int lengthAt = records.size;
+      records.writeInt(0);
+      encodeRecord(records, strings, scheduler);
+      records.putInt(lengthAt, records.size - lengthAt - 4);
+    }
+
+    Output section = new Output(records.size + strings.bytes + 64);
+    section.writeLong(stamp.size);
+    section.writeLong(stamp.modified);
+    section.writeInt(stamp.hash);
+    section.writeInt(strings.table.size());
+    for (String s : strings.table) {
+      byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+      section.writeInt(utf8.length);
+      section.write(utf8, 0, utf8.length);
+    }
+    section.write(records.bytes, 0, records.size);
+    return Arrays.copyOf(section.bytes, section.size);
+  }
+
+  /**
+   * Growing big-endian byte buffer, a lot cheaper per int than a
+   * DataOutputStream over a ByteArrayOutputStream.
+   */
+  private static final class Output {
+    byte[] bytes;
+    int size;
+
+    Output(int capacity) {
+      bytes = new byte[Math.max(16, capacity)];
+    }
+
+    private void ensure(int extra) {
+      if (size + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+      }
+    }
+
+    void writeByte(int value) {
+      ensure(1);
+      bytes[size++] = (byte) value;
+    }
+
+    void writeInt(int value) {
+      ensure(4);
+      putInt(size, value);
+      size += 4;
+    }
+
+    void putInt(int at, int value) {
+      bytes[at] = (byte) (value >>> 24);
+      bytes[at + 1] = (byte) (value >>> 16);
+      bytes[at + 2] = (byte) (value >>> 8);
+      bytes[at + 3] = (byte) value;
+    }
+
+    void writeLong(long value) {
+      writeInt((int) (value >>> 32));
+      writeInt((int) value);
+    }
+
+    void write(byte[] source, int offset, int length) {
+      ensure(length);
+      System.arraycopy(source, offset, bytes, size, length);
+      size += length;
+    }
+  }
+
+  /**
+   * Every string of a section stored once, in order of first use.
+   */
+  private static final class Strings {
+    final Map<String, Integer> indexes = new HashMap<>();
+    final List<String> table = new ArrayList<>();
+    int bytes;
+
+    int indexOf(String s) {
+      if (s == null) {
+        return -1;
+      }
+      Integer index = indexes.get(s);
+      if (index == null) {
+        index = table.size();
+        indexes.put(s, index);
+        table.add(s);
+        bytes += s.length() + 4;
+      }
+      return index;
+    }
+  }
+
+  private static void encodeRecord(Output out, Strings strings, Scheduler scheduler) {
+    out.writeInt(strings.indexOf(scheduler.getID()));
+    out.writeInt(strings.indexOf(scheduler.getDescription()));
+    int flags = scheduler.isActive() ? ACTIVE : 0;
+
+    if (scheduler instanceof Interval ic) {
+      flags |= (ic.isRandom() ? RANDOM : 0) | (ic.shouldRunInstantly() ? RUN_INSTANTLY : 0) | spreadFlags(ic.getSpread())
+          | (ic.isWallClock() ? WALL_CLOCK : 0);
+      out.writeByte(flags);
+      out.writeInt(ic.getInterval());
+      out.writeInt(strings.indexOf(ic.getUnit().toString().toLowerCase()));
+      writeGroups(out, strings, ic.getCommandGroups());
+    } else if (scheduler instanceof ClockBased cc) {
+      flags |= (cc.isRandom() ? RANDOM : 0) | spreadFlags(cc.getSpread());
+      out.writeByte(flags);
+      out.writeInt(cc.getTimes().size());
+      for (int[] t : cc.getTimes()) {
+        out.writeByte(t[0]);
+        out.writeByte(t[1]);
+      }
+      writeCommands(out, strings, cc.getCommands());
+      writeGroups(out, strings, cc.getCommandGroups());
+      out.writeInt(strings.indexOf(cc.getMisfire() != null ? cc.getMisfire().name() : null));
+    } else {
+      out.writeByte(flags);
+      out.writeInt(strings.indexOf(scheduler.getCommand()));
+    }
+    out.writeByte(scheduler.getOutput().ordinal());
+    out.writeByte(scheduler.getLog() != null ? scheduler.getLog().ordinal() + 1 : 0);
+  }
+
+  private static int spreadFlags(Boolean spread) {
+    if (spread == null) {
+      return 0;
+    }
+    return SPREAD_SET | (spread ? SPREAD : 0);
+  }
+
+  private static void writeCommands(Output out, Strings strings, List<String> commands) {
+    if (commands == null) {
+      out.writeInt(0);
+      return;
+    }
+    out.writeInt(commands.size());
+    for (String command : commands) {
+      out.writeInt(strings.indexOf(command));
+    }
+  }
+
+  private static void writeGroups(Output out, Strings strings, List<List<String>> groups) {
+    if (groups == null) {
+      out.writeInt(0);
+      return;
+    }
+    out.writeInt(groups.size());
+    for (List<String> group : groups) {
+      writeCommands(out, strings, group);
+    }
+  }
+
+  private static List<Scheduler> decode(Types type, ByteBuffer in) {
+    // Equal strings end up as one instance, so repeated commands share memory
+    String[] strings = new String[in.getInt()];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] utf8 = new byte[in.getInt()];
+      in.get(utf8);
+      strings[i] = new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    int count = in.getInt();
+    List<Scheduler> schedulers = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int length = in.getInt();
+      int end = in.position() + length;
+      schedulers.add(decodeRecord(type, in, strings));
+      in.position(end);
+    }
+    return schedulers;
+  }
+
+  private static Scheduler decodeRecord(Types type, ByteBuffer in, String[] strings) {
+    String id = string(in, strings);
+    String description = string(in, strings);
+    int flags = in.get();
+
+    Scheduler scheduler = switch (type) {
+      case INTERVAL -> {
+        int interval = in.getInt();
+        String unit = string(in, strings);
+        Interval ic = new Interval(id, readGroups(in, strings), interval, unit, (flags & RUN_INSTANTLY) != 0,
+            (flags & RANDOM) != 0);
+        ic.setSpread(spread(flags));
+        ic.setWallClock((flags & WALL_CLOCK) != 0);
+        yield ic;
+      }
+      case CLOCKBASED -> {
+        int[][] times = new int[in.getInt()][];
+        for (int t = 0; t < times.length; t++) {
+          times[t] = new int[] { in.get(), in.get() };
+        }
+        ClockBased cc = new ClockBased(id, readCommands(in, strings), readGroups(in, strings), (flags & RANDOM) != 0);
+        for (int[] t : times) {
+          cc.addTime(t[0], t[1]);
+        }
+        cc.setSpread(spread(flags));
+        String misfire = string(in, strings);
+        cc.setMisfire(misfire != null ? Misfire.valueOf(misfire) : null);
+        yield cc;
+      }
+      case ATBOOT -> new AtBoot(id, string(in, strings));
+    };
+    scheduler.setActive((flags & ACTIVE) != 0);
+    scheduler.setDescription(description);
+    scheduler.setOutput(OutputMode.values()[in.get()]);
+    int log = in.get();
+    scheduler.setLog(log > 0 ? LogPolicy.values()[log - 1] : null);
+    return scheduler;
+  }
+
+  private static String string(ByteBuffer in, String[] strings) {
+    int index = in.getInt();
+    return index < 0 ? null : strings[index];
+  }
+
+  private static Boolean spread(int flags) {
+    return (flags & SPREAD_SET) != 0 ? (flags & SPREAD) != 0 : null;
+  }
+
+  private static List<String> readCommands(ByteBuffer in, String[] strings) {
+    int count = in.getInt();
+    List<String> commands = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      commands.add(string(in, strings));
+    }
+    return commands;
+  }
+
+  private static List<List<String>> readGroups(ByteBuffer in, String[] strings) {
+    int count = in.getInt();
+    List<List<String>> groups = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      groups.add(readCommands(in, strings));
+    }
+    return groups;
+  }
+}
@@ -3,20 +3,29 @@ package net.william.commandscheduler;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +35,7 @@ public class ConfigHandler {
   public static Path intervalPath;
   public static Path clockPath;
   public static Path onceAtBootPath;
+  public static Path settingsPath;
 
   private static final Path CONFIG_PATH = Paths.get("config", "commandscheduler");
 
@@ -34,76 +44,183 @@ public class ConfigHandler {
         String value = json.getAsString();
         return TimeUnit.fromString(value);
       })
+      .registerTypeAdapter(Interval.class, SchedulerAdapters.INTERVAL)
+      .registerTypeAdapter(ClockBased.class, SchedulerAdapters.CLOCK_BASED)
+      .registerTypeAdapter(AtBoot.class, SchedulerAdapters.AT_BOOT)
       .setPrettyPrinting()
       .disableHtmlEscaping()
       .create();
 
   private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
 
-  private static final Type INTERVAL_JSON_TYPE = new TypeToken<List<com.google.gson.JsonObject>>() {
-  }.getType();
-  private static final Type CLOCKBASED_TYPE = new TypeToken<List<ClockBased>>() {
-  }.getType();
-  private static final Type ONCE_TYPE = new TypeToken<List<AtBoot>>() {
-  }.getType();
+  private static final SchedulerRegistry registry = new SchedulerRegistry();
+  private static Settings settings = new Settings();
+  private static final ConfigPersister persister = new ConfigPersister(CONFIG_PATH.resolve("journal.log"));
+  private static final ConfigCache cache = new ConfigCache(CONFIG_PATH.resolveSibling("commandscheduler.cache"));
+  private static final RuntimeState state = new RuntimeState(CONFIG_PATH.resolve("state.dat"));
+  private static final SchedulerMetrics metrics = new SchedulerMetrics();
+  // Files that loaded cleanly but weren't in the cache
+  private static final EnumSet<Types> uncached = EnumSet.noneOf(Types.class);
+  // Written to from the I/O thread
+  private static volatile ConfigWatcher watcher;
+
+  private static IntervalTimer intervalTimer = new IntervalWheel();
+  // Time source of wall-clock intervals and restored state, set by the scheduling engine
+  private static volatile WallClock clock = WallClock.SYSTEM;
+  private static final WallClockTimer wallClockTimer = new WallClockTimer(() -> clock.nanoTime());
+  private static final ClockIndex clockIndex = new ClockIndex();
+
+  // What the scheduling engine runs on, always the currently loaded config
+  private static final EngineState engineState = new EngineState() {
+    @Override
+    public Settings getSettings() {
+      return settings;
+    }
+
+    @Override
+    public List<AtBoot> getOnceAtBootCommands() {
+      return ConfigHandler.getOnceAtBootCommands();
+    }
+
+    @Override
+    public IntervalTimer getIntervalTimer() {
+      return intervalTimer;
+    }
+
+    @Override
+    public WallClockTimer getWallClockTimer() {
+      return wallClockTimer;
+    }
 
-  private static List<Interval> intervalCommands = new ArrayList<>();
-  private static List<ClockBased> clockBasedCommands = new ArrayList<>();
-  private static List<AtBoot> onceAtBootCommands = new ArrayList<>();
+    @Override
+    public ClockIndex getClockIndex() {
+      return clockIndex;
+    }
+
+    @Override
+    public Scheduler getCommandById(String id) {
+      return registry.get(id);
+    }
+
+    @Override
+    public SchedulerMetrics getMetrics() {
+      return metrics;
+    }
+
+    @Override
+    public void recordRanInstantly(Interval ic) {
+      ConfigHandler.recordRanInstantly(ic);
+    }
+  };
 
   public static void loadAllCommands() {
-    intervalCommands = loadIntervalCommands();
-    clockBasedCommands = loadClockBasedCommands();
-    onceAtBootCommands = loadOnceAtBootCommands();
+    settings = loadSettings();
+    loadSchedulers();
+    updateWatcher();
+  }
+
+  private static void loadSchedulers() {
+    if (settings.isConfigCache()) {
+      cache.read();
+    }
+
+    List<Scheduler> all = new ArrayList<>();
+    all.addAll(loadIntervalCommands());
+    all.addAll(loadClockBasedCommands());
+    all.addAll(loadOnceAtBootCommands());
+
+    if (!uncached.isEmpty()) {
+      // Rebuilt from the files again, the loaded schedulers are about to change
+      EnumSet<Types> types = EnumSet.copyOf(uncached);
+      uncached.clear();
+      persister.execute(() -> cacheFiles(types));
+    }
+
+    // IDs have to be unique across the files as well
+    if (checkForDuplicateIDs(all)) {
+      saveIntervalCommands();
+      saveClockBasedCommands();
+      saveOnceAtBootCommands();
+    }
+
+    registry.clear();
+    registry.addAll(all);
+
+    replayJournal(persister.readJournal());
+    long savedTick = state.restore(registry, clock.currentTimeMillis());
+    rebuildIntervalTimer(Math.max(intervalTimer.getCurrentTick(), savedTick));
+    clockIndex.rebuild(registry.getClockBased());
+  }
+
+  /**
+   * Arms every active interval again. The timer continues from the given
+   * tick, so spread intervals keep their phase across restarts.
+   */
+  private static void rebuildIntervalTimer(long tick) {
+    // Planning on a background thread can be switched with a reload
+    boolean background = intervalTimer instanceof BackgroundPlanner;
+    if (settings.isBackgroundPlanning() != background || tick != intervalTimer.getCurrentTick()) {
+      intervalTimer.shutdown();
+      intervalTimer = settings.isBackgroundPlanning()
+          ? new BackgroundPlanner(tick, settings.getPlanningLookaheadTicks())
+          : new IntervalWheel(tick);
+    }
+
+    intervalTimer.clear();
+    wallClockTimer.clear();
+    for (Scheduler scheduler : registry.getWithState(Types.INTERVAL, true)) {
+      Interval ic = (Interval) scheduler;
+      timerFor(ic).schedule(ic);
+    }
+  }
+
+  public static IntervalTimer getIntervalTimer() {
+    return intervalTimer;
+  }
+
+  public static WallClockTimer getWallClockTimer() {
+    return wallClockTimer;
+  }
+
+  /**
+   * The timer an interval is armed in, depending on its clock.
+   */
+  static IntervalTimer timerFor(Interval ic) {
+    return ic.isWallClock() ? wallClockTimer : intervalTimer;
+  }
+
+  /**
+   * Switches the clock wall-clock intervals and restored state run on, to
+   * the one of the engine that ticks them. Armed ones are re-armed
+   * on the new clock with the progress they made on the old one.
+   */
+  static void setClock(WallClock newClock) {
+    if (newClock == clock) {
+      return;
+    }
+    List<Interval> armed = new ArrayList<>();
+    for (Scheduler scheduler : registry.getWithState(Types.INTERVAL, true)) {
+      Interval ic = (Interval) scheduler;
+      if (ic.isWallClock()) {
+        wallClockTimer.unschedule(ic);
+        armed.add(ic);
+      }
+    }
+    clock = newClock;
+    armed.forEach(wallClockTimer::schedule);
+  }
+
+  public static ClockIndex getClockIndex() {
+    return clockIndex;
+  }
+
+  public static EngineState getEngineState() {
+    return engineState;
   }
 
     public static List<Interval> loadIntervalCommands() {
         intervalPath = CONFIG_PATH.resolve("intervals.json5");
-        List<com.google.gson.JsonObject> rawList = loadConfig("intervals.json5", INTERVAL_JSON_TYPE);
-
-        List<Interval> list = new ArrayList<>();
-        for (com.google.gson.JsonObject obj : rawList) {
-            try {
-                String id = obj.get("ID").getAsString();
-                int interval = obj.get("interval").getAsInt();
-                String unit = obj.get("unit").getAsString();
-                boolean runInstantly = obj.has("runInstantly") && obj.get("runInstantly").getAsBoolean();
-                boolean random = obj.has("random") && obj.get("random").getAsBoolean();
-
-                List<List<String>> commandGroups = new ArrayList<>();
-
-                if (obj.has("commands")) {
-                    // Could be flat OR nested
-                    var arr = obj.getAsJsonArray("commands");
-                    if (arr.size() > 0 && arr.get(0).isJsonArray()) {
-                        // ✅ Nested array: [["say A","say B"],["say X","say Y"]]
-                        for (var el : arr) {
-                            List<String> group = new ArrayList<>();
-                            for (var cmd : el.getAsJsonArray()) {
-                                group.add(cmd.getAsString());
-                            }
-                            commandGroups.add(group);
-                        }
-                    } else {
-                        // ✅ Flat array: ["say A","say B"]
-                        List<String> group = new ArrayList<>();
-                        for (var el : arr) {
-                            group.add(el.getAsString());
-                        }
-                        commandGroups.add(group);
-                    }
-                } else if (obj.has("command")) {
-                    // ✅ Legacy single command
-                    commandGroups.add(List.of(obj.get("command").getAsString()));
-                }
-
-                Interval ic = new Interval(id, commandGroups, interval, unit, runInstantly, random);
-                list.add(ic);
-
-            } catch (Exception e) {
-                LOGGER.error("Skipping invalid interval entry: {}", e.getMessage());
-            }
-        }
+        List<Interval> list = loadConfig("intervals.json5", Types.INTERVAL, SchedulerAdapters.INTERVAL);
 
         if (checkForDuplicateIDs(list)) {
             saveIntervalCommands();
@@ -114,61 +231,7 @@ public class ConfigHandler {
 
     public static List<ClockBased> loadClockBasedCommands() {
         clockPath = CONFIG_PATH.resolve("clock_based.json5");
-        List<com.google.gson.JsonObject> rawList = loadConfig("clock_based.json5", INTERVAL_JSON_TYPE); // reuse JsonObject list
-
-        List<ClockBased> list = new ArrayList<>();
-        for (com.google.gson.JsonObject obj : rawList) {
-            try {
-                String id = obj.get("ID").getAsString();
-                boolean active = obj.has("active") && obj.get("active").getAsBoolean();
-
-                // Times
-                List<int[]> times = new ArrayList<>();
-                if (obj.has("times")) {
-                    for (var t : obj.getAsJsonArray("times")) {
-                        if (t.isJsonArray() && t.getAsJsonArray().size() == 2) {
-                            int hour = t.getAsJsonArray().get(0).getAsInt();
-                            int minute = t.getAsJsonArray().get(1).getAsInt();
-                            times.add(new int[]{hour, minute});
-                        }
-                    }
-                }
-
-                // Commands
-                List<String> commands = new ArrayList<>();
-                List<List<String>> commandGroups = new ArrayList<>();
-                boolean random = obj.has("random") && obj.get("random").getAsBoolean();
-
-                if (obj.has("commands")) {
-                    for (var el : obj.getAsJsonArray("commands")) {
-                        if (el.isJsonArray()) {
-                            // Group of commands
-                            List<String> group = new ArrayList<>();
-                            for (var sub : el.getAsJsonArray()) {
-                                group.add(sub.getAsString());
-                            }
-                            commandGroups.add(group);
-                        } else {
-                            // Single command
-                            commands.add(el.getAsString());
-                        }
-                    }
-                } else if (obj.has("command")) {
-                    commands.add(obj.get("command").getAsString()); // legacy single command
-                }
-
-                ClockBased cc = new ClockBased(id, commands, commandGroups, random);
-                cc.setActive(active);
-                for (int[] t : times) {
-                    cc.addTime(t[0], t[1]);
-                }
-
-                list.add(cc);
-
-            } catch (Exception e) {
-                LOGGER.error("Skipping invalid clock-based entry: {}", e.getMessage());
-            }
-        }
+        List<ClockBased> list = loadConfig("clock_based.json5", Types.CLOCKBASED, SchedulerAdapters.CLOCK_BASED);
 
         if (checkForDuplicateIDs(list)) {
             saveClockBasedCommands();
@@ -180,7 +243,7 @@ public class ConfigHandler {
 
     public static List<AtBoot> loadOnceAtBootCommands() {
     onceAtBootPath = CONFIG_PATH.resolve("once_at_boot.json5");
-    List<AtBoot> list = loadConfig("once_at_boot.json5", ONCE_TYPE);
+    List<AtBoot> list = loadConfig("once_at_boot.json5", Types.ATBOOT, SchedulerAdapters.AT_BOOT);
 
     if (checkForDuplicateIDs(list)) {
       saveOnceAtBootCommands();
@@ -190,12 +253,183 @@ public class ConfigHandler {
   }
 
   public static void reloadConfigs() {
-    intervalCommands = loadIntervalCommands();
-    clockBasedCommands = loadClockBasedCommands();
-    onceAtBootCommands = loadOnceAtBootCommands();
+    Settings reloaded = loadSettings();
+    boolean planningChanged = reloaded.isBackgroundPlanning() != (intervalTimer instanceof BackgroundPlanner);
+    if (watcher != null && reloaded.isWatchConfig() && !planningChanged) {
+      // Only the edited schedulers, unsaved changes to the others stay
+      boolean spreadChanged = reloaded.isSpreadLoad() != settings.isSpreadLoad();
+      settings = reloaded;
+      if (spreadChanged) {
+        respread();
+      }
+      applyFileChanges(watcher.checkNow());
+      return;
+    }
+
+    // The files on disk win, unsaved changes would otherwise overwrite them
+    state.checkpoint(intervalTimer, registry);
+    persister.discardPending();
+    persister.awaitIdle();
+
+    settings = reloaded;
+    loadSchedulers();
+    updateWatcher();
   }
 
-  private static <T> List<T> loadConfig(String fileName, Type type) {
+  /**
+   * Places the schedulers again after spreadLoad changed. Intervals are armed
+   * again with the progress they made, and the clock index is rebuilt, since
+   * both are placed by the spread offset.
+   */
+  private static void respread() {
+    for (Scheduler scheduler : registry.getWithState(Types.INTERVAL, true)) {
+      Interval ic = (Interval) scheduler;
+      if (!ic.isWallClock()) {
+        intervalTimer.unschedule(ic);
+        intervalTimer.schedule(ic);
+      }
+    }
+    clockIndex.rebuild(registry.getClockBased());
+  }
+
+  private static void updateWatcher() {
+    if (settings.isWatchConfig() && watcher == null) {
+      watcher = new ConfigWatcher(CONFIG_PATH);
+      watcher.start();
+    } else if (!settings.isWatchConfig() && watcher != null) {
+      watcher.stop();
+      watcher = null;
+    }
+  }
+
+  /**
+   * Applies edits the watcher found in the files, called every tick.
+   */
+  public static void applyFileChanges() {
+    ConfigWatcher current = watcher;
+    if (current == null || !current.hasChanges()) {
+      return;
+    }
+    List<ConfigWatcher.Diff> diffs = new ArrayList<>();
+    ConfigWatcher.Diff diff;
+    while ((diff = current.poll()) != null) {
+      diffs.add(diff);
+    }
+    applyFileChanges(diffs);
+  }
+
+  /**
+   * Applies edited entries to the registry. Removals go first, so a
+   * scheduler can move from one file to another. A changed scheduler keeps
+   * the progress of the one it replaces. Nothing is saved, the files already
+   * hold these changes.
+   */
+  private static void applyFileChanges(List<ConfigWatcher.Diff> diffs) {
+    int removed = 0;
+    int changed = 0;
+    for (ConfigWatcher.Diff diff : diffs) {
+      for (String id : diff.removed) {
+        Scheduler existing = registry.get(id);
+        if (existing != null && existing.getType() == diff.type) {
+          unregister(existing);
+          removed++;
+        }
+      }
+    }
+
+    for (ConfigWatcher.Diff diff : diffs) {
+      for (Scheduler scheduler : diff.changed) {
+        Scheduler existing = registry.get(scheduler.getID());
+        if (existing == null) {
+          register(scheduler);
+        } else if (existing.getType() == scheduler.getType()) {
+          replace(existing, scheduler);
+        } else {
+          LOGGER.error("Ignoring '{}' in {}, the ID is already used by another scheduler", scheduler.getID(),
+              getPath(diff.type).getFileName());
+          continue;
+        }
+        changed++;
+      }
+    }
+    if (removed + changed > 0) {
+      LOGGER.info("Reloaded {} changed and {} removed schedulers from the config files", changed, removed);
+    }
+  }
+
+  private static void register(Scheduler scheduler) {
+    if (scheduler instanceof Interval ic) {
+      addIntervalCommand(ic);
+    } else if (scheduler instanceof ClockBased cc) {
+      addClockBasedCommand(cc);
+    } else if (scheduler instanceof AtBoot oc) {
+      addOnceAtBootCommand(oc);
+    }
+  }
+
+  private static void unregister(Scheduler scheduler) {
+    registry.remove(scheduler);
+    state.remove(scheduler.getID());
+    metrics.remove(scheduler.getID());
+    if (scheduler instanceof Interval ic) {
+      timerFor(ic).unschedule(ic);
+    } else if (scheduler instanceof ClockBased cc) {
+      clockIndex.removeAll(cc);
+    }
+  }
+
+  private static void replace(Scheduler old, Scheduler replacement) {
+    if (old instanceof Interval oldIc && replacement instanceof Interval ic) {
+      timerFor(oldIc).unschedule(oldIc); // stores its progress
+      ic.keepProgress(oldIc);
+      registry.replace(old, ic);
+      if (ic.isActive())
+        timerFor(ic).schedule(ic);
+    } else if (old instanceof ClockBased oldCc && replacement instanceof ClockBased cc) {
+      clockIndex.removeAll(oldCc);
+      cc.keepProgress(oldCc);
+      registry.replace(old, cc);
+      clockIndex.addAll(cc);
+    } else if (old instanceof AtBoot oldOc && replacement instanceof AtBoot oc) {
+      oc.keepProgress(oldOc);
+      registry.replace(old, oc);
+    }
+  }
+
+  public static Settings loadSettings() {
+    settingsPath = CONFIG_PATH.resolve("settings.json5");
+    try {
+      if (!Files.exists(settingsPath)) {
+        Files.createDirectories(CONFIG_PATH);
+        writeDefaultConfigWithComments("settings.json5");
+      }
+
+      String json = Files.readString(settingsPath, StandardCharsets.UTF_8);
+      Settings loaded = gson.fromJson(json, Settings.class);
+      if (loaded == null) {
+        return new Settings();
+      }
+      loaded.parse();
+      return loaded;
+    } catch (Exception e) {
+      LOGGER.error("Failed to load settings.json5, using defaults: {}", e.getMessage());
+      return new Settings();
+    }
+  }
+
+  public static Settings getSettings() {
+    return settings;
+  }
+
+  /**
+   * Loads a config file, or takes it from the binary cache while the file
+   * is unchanged since it was cached.
+   *
+   * Only files that loaded without errors are cached, so the errors show up
+   * on every boot until they are fixed.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T extends Scheduler> List<T> loadConfig(String fileName, Types type, TypeAdapter<T> adapter) {
     try {
       Path path = CONFIG_PATH.resolve(fileName);
 
@@ -204,42 +438,189 @@ public class ConfigHandler {
         writeDefaultConfigWithComments(fileName);
       }
 
-      String json = Files.readString(path, StandardCharsets.UTF_8);
-      List<T> loaded = gson.fromJson(json, type);
-      if (loaded == null)
-        return new ArrayList<>();
-
-      // Validate and filter entries
-      List<T> validEntries = new ArrayList<>();
-      for (T entry : loaded) {
-        try {
-          if (entry instanceof Interval ic) {
-            if (!Interval.isValidInterval(ic.getInterval())) {
-              LOGGER.error("Skipping invalid interval for ID '{}': {}", ic.getID(), ic.getInterval());
-              continue;
-            }
-          }
-          validEntries.add(entry);
-        } catch (Exception e) {
-          LOGGER.error("Skipping invalid entry in {}: {}", fileName, e.getMessage());
+      if (settings.isConfigCache()) {
+        List<Scheduler> cached = cache.get(type, ConfigCache.stamp(path));
+        if (cached != null) {
+          return (List<T>) cached;
         }
       }
 
-      return validEntries;
+      List<T> list = new ArrayList<>();
+      if (readConfig(path, adapter, list) && settings.isConfigCache()) {
+        uncached.add(type);
+      }
+      return list;
     } catch (Exception e) {
       LOGGER.error("Failed to load {}: {}", fileName, e.getMessage());
       return new ArrayList<>();
     }
   }
 
-  private static <T> void saveConfig(Path path, List<T> list, Type type) {
-    try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-      gson.toJson(list, type, writer); // <-- USE THIS instead of list.getClass()
+  /**
+   * Reads a config file one entry at a time, so only the resulting
+   * schedulers are ever held in memory. Invalid entries are skipped, a file
+   * that isn't valid JSON at all throws. Returns false if any entry was
+   * skipped.
+   */
+  private static <T> boolean readConfig(Path path, TypeAdapter<T> adapter, List<? super T> list) throws IOException {
+    boolean complete = true;
+    try (JsonReader reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+      reader.setLenient(true); // json5 comments
+      if (reader.peek() == JsonToken.END_DOCUMENT) {
+        return true;
+      }
+
+      reader.beginArray();
+      while (reader.hasNext()) {
+        try {
+          T entry = adapter.read(reader);
+          if (entry != null)
+            list.add(entry);
+        } catch (JsonParseException e) {
+          LOGGER.error("Skipping invalid entry in {}: {}", path.getFileName(), e.getMessage());
+          complete = false;
+        }
+      }
+      reader.endArray();
+    } catch (EOFException e) {
+      // Empty file
+    }
+    return complete;
+  }
+
+  static TypeAdapter<? extends Scheduler> adapterFor(Types type) {
+    return switch (type) {
+      case INTERVAL -> SchedulerAdapters.INTERVAL;
+      case CLOCKBASED -> SchedulerAdapters.CLOCK_BASED;
+      case ATBOOT -> SchedulerAdapters.AT_BOOT;
+    };
+  }
+
+  /**
+   * Caches files that had to be parsed on load. Runs on the I/O thread, so
+   * the files are read a second time there instead of encoding the loaded
+   * schedulers on the server thread.
+   */
+  private static void cacheFiles(EnumSet<Types> types) {
+    for (Types type : types) {
+      Path path = getPath(type);
+      try {
+        ConfigCache.Stamp stamp = ConfigCache.stamp(path);
+        List<Scheduler> list = new ArrayList<>();
+        if (readConfig(path, adapterFor(type), list)) {
+          cache.put(type, ConfigCache.encode(stamp, list));
+        }
+      } catch (Exception e) {
+        LOGGER.error("Failed to cache {}: {}", path.getFileName(), e.getMessage());
+      }
+    }
+    cache.write();
+  }
+
+  /**
+   * Writes to a temp file next to the target and renames it over the target,
+   * so a crash mid-write never leaves a half written config behind.
+   *
+   * Returns the stamp of what was written, or null if it failed.
+   */
+  static ConfigCache.Stamp writeAtomically(Path path, JsonElement json) {
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        gson.toJson(json, writer);
+      }
+      // Renaming keeps the modification time, so this is the stamp of the target
+      ConfigCache.Stamp stamp = ConfigCache.stamp(tmp);
+      ConfigWatcher current = watcher;
+      if (current != null)
+        current.expect(path, stamp);
+      try {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return stamp;
     } catch (IOException e) {
       LOGGER.error("Failed to save config to {}: {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Caches a file that was just written from a snapshot. Runs on the I/O
+   * thread, on the same copies the file was written from.
+   */
+  static void cacheSnapshot(Types type, ConfigCache.Stamp stamp, List<Scheduler> snapshot) {
+    try {
+      cache.put(type, ConfigCache.encode(stamp, snapshot));
+    } catch (RuntimeException e) {
+      LOGGER.error("Failed to cache {}: {}", type.name().toLowerCase(), e.getMessage());
     }
   }
 
+  static ConfigCache getCache() {
+    return cache;
+  }
+
+  static Path getPath(Types type) {
+    return switch (type) {
+      case INTERVAL -> intervalPath;
+      case CLOCKBASED -> clockPath;
+      case ATBOOT -> onceAtBootPath;
+    };
+  }
+
+  /**
+   * Copies the schedulers of a file on the server thread, so the I/O thread
+   * can turn them into JSON while the registry keeps changing.
+   */
+  static List<Scheduler> snapshot(Types type) {
+    List<? extends Scheduler> schedulers = switch (type) {
+      case INTERVAL -> registry.getIntervals();
+      case CLOCKBASED -> registry.getClockBased();
+      case ATBOOT -> registry.getAtBoot();
+    };
+    List<Scheduler> copies = new ArrayList<>(schedulers.size());
+    for (Scheduler scheduler : schedulers) {
+      copies.add(scheduler.copy());
+    }
+    return copies;
+  }
+
+  @SuppressWarnings("unchecked")
+  static JsonElement toJson(Types type, List<Scheduler> snapshot) {
+    TypeAdapter<Scheduler> adapter = (TypeAdapter<Scheduler>) adapterFor(type);
+    com.google.gson.JsonArray arr = new com.google.gson.JsonArray();
+    for (Scheduler scheduler : snapshot) {
+      arr.add(adapter.toJsonTree(scheduler));
+    }
+    return arr;
+  }
+
+  /**
+   * Saves the progress of the schedulers every few seconds, called every
+   * tick.
+   */
+  public static void checkpointState() {
+    state.tick(intervalTimer, registry);
+  }
+
+  /**
+   * Saves the progress of the schedulers and writes it to disk, for shutdown.
+   */
+  public static void saveState() {
+    state.checkpoint(intervalTimer, registry);
+    state.close();
+  }
+
+  public static SchedulerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public static ConfigPersister getPersister() {
+    return persister;
+  }
+
   public static <T> boolean checkForDuplicateIDs(List<T> list) {
     Map<String, Integer> idMap = new HashMap<>();
     boolean duplicatesFound = false;
@@ -292,7 +673,9 @@ public class ConfigHandler {
                 // units are ticks, seconds, minutes, hours or days
                 "unit": "minutes",
                 // if the command should run once as the timer starts or not
-                "runInstantly": false
+                "runInstantly": false,
+                // "ticks" counts server ticks, so a lagging server runs it less often. "wall" uses real time
+                "clock": "ticks"
               },
               {
                 "ID": "ExampleIntervalCommand2",
@@ -303,7 +686,9 @@ public class ConfigHandler {
                 // units are ticks, seconds, minutes, hours or days
                 "unit": "ticks",
                 // if the command should run once as the timer starts or not
-                "runInstantly": false
+                "runInstantly": false,
+                // Command feedback: "broadcast" to the console and ops, "silent", or "capture" to keep the last result for details
+                "output": "silent"
               }
             ]
             """;
@@ -316,7 +701,9 @@ public class ConfigHandler {
                 "active": false,
                 "command": "say The time is either 01.00 or 13.00! (commandscheduler mod)",
                 // Use 24h format: HH.mm
-                "times": [[1, 0], [13, 0]]
+                "times": [[1, 0], [13, 0]],
+                // Runs missed while the server didn't tick: "skip", "once" or "all"
+                "misfire": "once"
               }
             ]
             """;
@@ -331,6 +718,67 @@ public class ConfigHandler {
               }
             ]
             """;
+      case "settings.json5" ->
+        """
+            {
+              // Most scheduled commands that may run in a single server tick, 0 means no limit
+              "maxCommandsPerTick": 0,
+              // Time budget in microseconds for scheduled commands in a single server tick, 0 means no limit
+              "tickBudgetMicros": 0,
+              // Commands over the budget wait in this queue and run on the following ticks. When it is
+              // full, the oldest waiting command runs right away, over the budget, so the order is kept
+              "spilloverCapacity": 1024,
+              // Give schedulers with the same period or clock time their own stable offset, so they
+              // don't all run on the same tick. Can be set per scheduler with "spread": true/false
+              "spreadLoad": false,
+              // How many parsed scheduled commands to keep, so they don't have to be parsed on every run
+              "parseCacheSize": 4096,
+              // Work out which intervals are due on a separate thread that runs a few ticks ahead of the
+              // server. Intervals still run on the exact same tick. Only worth it with many thousands
+              "backgroundPlanning": false,
+              // How many ticks the background thread may run ahead of the server
+              "planningLookaheadTicks": 20,
+              // Changes are saved in the background once no new change came in for this many milliseconds
+              "saveDelayMillis": 1000,
+              // Append every change to journal.log instead of rewriting the whole file, useful when
+              // making thousands of changes. The journal is folded into the files once it is this big
+              "journal": false,
+              "journalMaxBytes": 1048576,
+              // Most scheduler IDs suggested while typing a command
+              "suggestionLimit": 100,
+              // Keep a binary copy of the scheduler files in config/commandscheduler.cache, so they don't
+              // have to be parsed again on boot while they are unchanged
+              "configCache": true,
+              // Pick up edits to the scheduler files while the server runs. Only the edited schedulers
+              // are reloaded, the rest keep their progress. The reload command works the same way then
+              "watchConfig": false,
+              // Save how far every interval got and when clock-based schedulers last ran to state.dat this
+              // often, so a restart doesn't reset them. 0 only saves it when the server stops
+              "stateCheckpointSeconds": 30,
+              // What clock-based schedulers do with runs missed while the server didn't tick for at least
+              // a whole minute: "skip" them, run "once" late, or run "all" of them up to maxMissedRuns.
+              // Shorter gaps never skip a run. Can be set per scheduler with "misfire". Late runs start
+              // at missedRunsPerTick per tick
+              "misfire": "once",
+              "maxMissedRuns": 10,
+              "missedRunsPerTick": 1,
+              // Log a warning (at most once a minute) when the mod takes longer than this many microseconds
+              // of a single tick, naming the schedulers that ran. 0 turns it off
+              "tickWarningMicros": 10000,
+              // Serve OpenMetrics text for Prometheus at http://<metricsAddress>:<metricsPort>/metrics
+              "metricsExporter": false,
+              // Keep this a local address unless the port is firewalled, the endpoint has no authentication
+              "metricsAddress": "127.0.0.1",
+              "metricsPort": 9464,
+              // How runs are logged: "off", "sampled", "aggregated" (one line per scheduler per minute) or "full".
+              // Can be set per scheduler with "log". Silent and capturing schedulers aren't logged unless they set it
+              "logPolicy": "aggregated",
+              // Sampled schedulers log one run in this many
+              "logSampleRate": 100,
+              // Log lines waiting to be written, more are dropped and counted instead of slowing the server down
+              "logQueueSize": 4096
+            }
+            """;
       default -> throw new IllegalArgumentException("Unknown config file: " + fileName);
     };
 
@@ -338,188 +786,306 @@ public class ConfigHandler {
   }
 
   public static boolean removeCommandById(String id) {
-    boolean removed = false;
-
-    removed |= intervalCommands.removeIf(cmd -> cmd.getID().equals(id));
-    removed |= clockBasedCommands.removeIf(cmd -> cmd.getID().equals(id));
-    removed |= onceAtBootCommands.removeIf(cmd -> cmd.getID().equals(id));
+    Scheduler cmd = registry.get(id);
+    if (cmd == null)
+      return false;
 
-    if (removed) {
-      saveIntervalCommands();
-      saveClockBasedCommands();
-      saveOnceAtBootCommands();
-    }
+    unregister(cmd);
+    recordRemoved(cmd);
+    return true;
+  }
 
-    return removed;
+  public static Scheduler getCommandById(String id) {
+    return registry.get(id);
   }
 
-  public static Object getCommandById(String id) {
-    for (Interval ic : intervalCommands) {
-      if (ic.getID().equals(id))
-        return ic;
-    }
-    for (ClockBased cc : clockBasedCommands) {
-      if (cc.getID().equals(id))
-        return cc;
-    }
-    for (AtBoot oc : onceAtBootCommands) {
-      if (oc.getID().equals(id))
-        return oc;
-    }
-    return null;
+  public static SchedulerRegistry getRegistry() {
+    return registry;
   }
 
   public static boolean updateSchedulerId(String oldId, String newId) {
-    Object cmd = getCommandById(oldId);
+    Scheduler cmd = registry.get(oldId);
     if (cmd == null || !Scheduler.isValidID(newId))
       return false;
 
-    boolean success = false;
+    // The minute offset of spread clock-based schedulers depends on the ID
+    if (cmd instanceof ClockBased cc)
+      clockIndex.removeAll(cc);
+
+    boolean success = registry.rename(cmd, newId);
+
+    if (cmd instanceof ClockBased cc) {
+      clockIndex.addAll(cc);
+    } else if (success && cmd instanceof Interval ic && ic.isActive() && ic.isSpread()) {
+      timerFor(ic).schedule(ic); // line up with the phase of the new ID
+    }
+
+    if (success) {
+      state.rename(oldId, newId);
+      metrics.rename(oldId, newId);
+      recordRenamed(cmd, oldId);
+    }
+    return success;
+  }
+
+  /**
+   * Activates or deactivates a scheduler. Returns null if it already was in
+   * that state and false if there is no scheduler with that ID.
+   */
+  public static Boolean setActiveState(String id, boolean active) {
+    Scheduler cmd = registry.get(id);
+    if (cmd == null)
+      return false;
+    if (!registry.setActive(cmd, active))
+      return null; // Already in desired state
 
     if (cmd instanceof Interval ic) {
-      success = ic.setID(newId);
-      if (success)
-        saveIntervalCommands();
+      if (active) {
+        timerFor(ic).schedule(ic);
+      } else {
+        timerFor(ic).unschedule(ic);
+      }
     } else if (cmd instanceof ClockBased cc) {
-      success = cc.setID(newId);
-      if (success)
-        saveClockBasedCommands();
-    } else if (cmd instanceof AtBoot oc) {
-      success = oc.setID(newId);
-      if (success)
-        saveOnceAtBootCommands();
+      if (active) {
+        clockIndex.addAll(cc);
+      } else {
+        clockIndex.removeAll(cc);
+      }
     }
+    recordActiveState(cmd);
+    return true;
+  }
 
-    return success;
+  // --- Journal ---
+
+  private static com.google.gson.JsonObject toJson(Scheduler scheduler) {
+    return gson.toJsonTree(scheduler, scheduler.getClass()).getAsJsonObject();
   }
 
-    public static void saveIntervalCommands() {
-        try (BufferedWriter writer = Files.newBufferedWriter(intervalPath, StandardCharsets.UTF_8)) {
-            com.google.gson.JsonArray arr = new com.google.gson.JsonArray();
-            for (Interval ic : intervalCommands) {
-                com.google.gson.JsonObject obj = new com.google.gson.JsonObject();
-                obj.addProperty("ID", ic.getID());
-                obj.addProperty("active", ic.isActive());
-                obj.addProperty("interval", ic.getInterval());
-                obj.addProperty("unit", ic.getUnit().toString().toLowerCase());
-                obj.addProperty("runInstantly", ic.shouldRunInstantly());
-
-                if (ic.getCommandGroup() != null && !ic.getCommandGroup().isEmpty()) {
-                    com.google.gson.JsonArray cmdArr = new com.google.gson.JsonArray();
-                    for (String c : ic.getCommandGroup()) {
-                        cmdArr.add(c);
-                    }
-                    obj.add("commands", cmdArr);
-                    obj.addProperty("random", ic.isRandom());
-                } else {
-                    obj.addProperty("command", ic.getCommand()); // legacy single command
-                }
-
-                arr.add(obj);
-            }
-            gson.toJson(arr, writer);
-        } catch (IOException e) {
-            LOGGER.error("Failed to save interval commands: {}", e.getMessage());
+  private static com.google.gson.JsonObject newRecord(String op, Scheduler scheduler) {
+    com.google.gson.JsonObject record = new com.google.gson.JsonObject();
+    record.addProperty("op", op);
+    record.addProperty("type", scheduler.getType().name());
+    record.addProperty("ID", scheduler.getID());
+    return record;
+  }
+
+  private static void record(Scheduler scheduler, com.google.gson.JsonObject record) {
+    persister.record(scheduler.getType(), record);
+  }
+
+  public static void recordCreated(Scheduler scheduler) {
+    com.google.gson.JsonObject record = newRecord(ConfigJournal.CREATE, scheduler);
+    record.add("entry", toJson(scheduler));
+    record(scheduler, record);
+  }
+
+  public static void recordActiveState(Scheduler scheduler) {
+    com.google.gson.JsonObject record = newRecord(ConfigJournal.ACTIVATE, scheduler);
+    record.addProperty("active", scheduler.isActive());
+    record(scheduler, record);
+  }
+
+  public static void recordTimeAdded(ClockBased cc, int hour, int minute) {
+    com.google.gson.JsonObject record = newRecord(ConfigJournal.ADD_TIME, cc);
+    record.addProperty("hour", hour);
+    record.addProperty("minute", minute);
+    record(cc, record);
+  }
+
+  public static void recordTimeRemoved(ClockBased cc, int hour, int minute) {
+    com.google.gson.JsonObject record = newRecord(ConfigJournal.REMOVE_TIME, cc);
+    record.addProperty("hour", hour);
+    record.addProperty("minute", minute);
+    record(cc, record);
+  }
+
+  public static void recordRenamed(Scheduler scheduler, String oldId) {
+    com.google.gson.JsonObject record = newRecord(ConfigJournal.RENAME, scheduler);
+    record.addProperty("ID", oldId);
+    record.addProperty("newID", scheduler.getID());
+    record(scheduler, record);
+  }
+
+  public static void recordDescription(Scheduler scheduler) {
+    com.google.gson.JsonObject record = newRecord(ConfigJournal.DESCRIPTION, scheduler);
+    record.addProperty("description", scheduler.getDescription());
+    record(scheduler, record);
+  }
+
+  public static void recordRanInstantly(Interval ic) {
+    record(ic, newRecord(ConfigJournal.RAN, ic));
+  }
+
+  public static void recordRemoved(Scheduler scheduler) {
+    record(scheduler, newRecord(ConfigJournal.REMOVE, scheduler));
+  }
+
+  /**
+   * Applies journal records to the lists that were just loaded. The files
+   * may already hold some of them, if the server went down between writing
+   * the files and emptying the journal. Records that set a value are applied
+   * again, other records are skipped when they no longer apply. A create is
+   * skipped if the scheduler it made was removed or renamed later on, and
+   * that already happened in the files, so a removed scheduler can't come back.
+   */
+  private static void replayJournal(List<com.google.gson.JsonObject> records) {
+    if (records.isEmpty()) {
+      return;
+    }
+
+    int applied = 0;
+    for (int i = 0; i < records.size(); i++) {
+      com.google.gson.JsonObject record = records.get(i);
+      try {
+        if (record.get("op").getAsString().equals(ConfigJournal.CREATE) && isSuperseded(records, i)) {
+          continue;
+        }
+        if (applyRecord(record)) {
+          applied++;
         }
+      } catch (Exception e) {
+        LOGGER.error("Skipping invalid journal record: {}", e.getMessage());
+      }
     }
+    LOGGER.info("Replayed {} of {} journal records", applied, records.size());
+  }
 
+  /**
+   * Follows the scheduler created by the record at the given index through
+   * later renames. True if it is removed again, or if the name it ends up
+   * with is already taken without having been freed in the meantime, which
+   * means the files were written after the journal.
+   */
+  private static boolean isSuperseded(List<com.google.gson.JsonObject> records, int index) {
+    String name = records.get(index).get("ID").getAsString();
+    boolean renamed = false;
+    boolean finalNameFreed = false;
+    Set<String> freed = new HashSet<>();
+    for (int i = index + 1; i < records.size(); i++) {
+      com.google.gson.JsonObject record = records.get(i);
+      String op = record.get("op").getAsString();
+      String id = record.get("ID").getAsString();
+      if (op.equals(ConfigJournal.REMOVE)) {
+        if (id.equals(name)) {
+          return true;
+        }
+        freed.add(id);
+      } else if (op.equals(ConfigJournal.RENAME)) {
+        String newId = record.get("newID").getAsString();
+        if (id.equals(name)) {
+          name = newId;
+          renamed = true;
+          finalNameFreed = freed.contains(newId);
+        } else {
+          freed.add(id);
+        }
+      } else if (op.equals(ConfigJournal.CREATE) && id.equals(name)) {
+        // Created again later, that record decides
+        return false;
+      }
+    }
+    return renamed && !finalNameFreed && registry.contains(name);
+  }
+
+  private static boolean applyRecord(com.google.gson.JsonObject record) {
+    String op = record.get("op").getAsString();
+    String id = record.get("ID").getAsString();
+
+    if (op.equals(ConfigJournal.CREATE)) {
+      com.google.gson.JsonObject entry = record.getAsJsonObject("entry");
+      Types type = Types.valueOf(record.get("type").getAsString());
+      Scheduler created = switch (type) {
+        case INTERVAL -> SchedulerAdapters.INTERVAL.fromJsonTree(entry);
+        case CLOCKBASED -> SchedulerAdapters.CLOCK_BASED.fromJsonTree(entry);
+        case ATBOOT -> SchedulerAdapters.AT_BOOT.fromJsonTree(entry);
+      };
+      Scheduler existing = registry.get(id);
+      if (existing != null)
+        registry.remove(existing);
+      return registry.add(created);
+    }
+
+    Scheduler scheduler = registry.get(id);
+    if (scheduler == null) {
+      return false;
+    }
+
+    switch (op) {
+      case ConfigJournal.ACTIVATE -> registry.setActive(scheduler, record.get("active").getAsBoolean());
+      case ConfigJournal.DESCRIPTION -> scheduler.setDescription(record.get("description").getAsString());
+      case ConfigJournal.ADD_TIME -> {
+        if (!(scheduler instanceof ClockBased cc))
+          return false;
+        cc.addTime(record.get("hour").getAsInt(), record.get("minute").getAsInt());
+      }
+      case ConfigJournal.REMOVE_TIME -> {
+        if (!(scheduler instanceof ClockBased cc))
+          return false;
+        cc.removeTime(record.get("hour").getAsInt(), record.get("minute").getAsInt());
+      }
+      case ConfigJournal.RAN -> {
+        if (!(scheduler instanceof Interval ic))
+          return false;
+        ic.setRunInstantly(false);
+      }
+      case ConfigJournal.RENAME -> {
+        if (!registry.rename(scheduler, record.get("newID").getAsString()))
+          return false;
+      }
+      case ConfigJournal.REMOVE -> registry.remove(scheduler);
+      default -> {
+        return false;
+      }
+    }
+    return true;
+  }
+
+    public static void saveIntervalCommands() {
+        persister.markDirty(Types.INTERVAL);
+    }
 
     public static void saveClockBasedCommands() {
-        try (BufferedWriter writer = Files.newBufferedWriter(clockPath, StandardCharsets.UTF_8)) {
-            com.google.gson.JsonArray arr = new com.google.gson.JsonArray();
-            for (ClockBased cc : clockBasedCommands) {
-                com.google.gson.JsonObject obj = new com.google.gson.JsonObject();
-                obj.addProperty("ID", cc.getID());
-                obj.addProperty("active", cc.isActive());
-
-                // Save times
-                com.google.gson.JsonArray timeArr = new com.google.gson.JsonArray();
-                for (int[] t : cc.getTimes()) {
-                    com.google.gson.JsonArray pair = new com.google.gson.JsonArray();
-                    pair.add(t[0]);
-                    pair.add(t[1]);
-                    timeArr.add(pair);
-                }
-                obj.add("times", timeArr);
-
-                // Save commands
-                if (cc.getCommandGroups() != null && !cc.getCommandGroups().isEmpty()) {
-                    com.google.gson.JsonArray cmdArr = new com.google.gson.JsonArray();
-                    for (List<String> group : cc.getCommandGroups()) {
-                        com.google.gson.JsonArray subArr = new com.google.gson.JsonArray();
-                        for (String cmd : group) {
-                            subArr.add(cmd);
-                        }
-                        cmdArr.add(subArr);
-                    }
-                    obj.add("commands", cmdArr);
-                } else if (cc.getCommands() != null && !cc.getCommands().isEmpty()) {
-                    com.google.gson.JsonArray cmdArr = new com.google.gson.JsonArray();
-                    for (String cmd : cc.getCommands()) {
-                        cmdArr.add(cmd);
-                    }
-                    obj.add("commands", cmdArr);
-                } else {
-                    obj.addProperty("command", cc.getCommand()); // legacy
-                }
-
-                obj.addProperty("random", cc.isRandom());
-                arr.add(obj);
-            }
-            gson.toJson(arr, writer);
-        } catch (IOException e) {
-            LOGGER.error("Failed to save clock-based commands: {}", e.getMessage());
-        }
+        persister.markDirty(Types.CLOCKBASED);
     }
 
   public static void saveOnceAtBootCommands() {
-    saveConfig(onceAtBootPath, onceAtBootCommands, ONCE_TYPE);
+    persister.markDirty(Types.ATBOOT);
   }
 
   public static List<ClockBased> getClockBasedCommands() {
-    return Collections.unmodifiableList(clockBasedCommands);
+    return registry.getClockBased();
   }
 
   public static List<Interval> getIntervalCommands() {
-    return Collections.unmodifiableList(intervalCommands);
+    return registry.getIntervals();
   }
 
   public static List<AtBoot> getOnceAtBootCommands() {
-    return Collections.unmodifiableList(onceAtBootCommands);
-  }
-
-  public static void addClockBasedCommand(ClockBased command) {
-    clockBasedCommands.add(command);
+    return registry.getAtBoot();
   }
 
-  public static void addIntervalCommand(Interval command) {
-    intervalCommands.add(command);
+  public static boolean addClockBasedCommand(ClockBased command) {
+    if (!registry.add(command))
+      return false;
+    clockIndex.addAll(command);
+    return true;
   }
 
-  public static void addOnceAtBootCommand(AtBoot command) {
-    onceAtBootCommands.add(command);
+  public static boolean addIntervalCommand(Interval command) {
+    if (!registry.add(command))
+      return false;
+    if (command.isActive())
+      timerFor(command).schedule(command);
+    return true;
   }
 
-  public static List<String> getAllSchedulerIDs() {
-    List<String> ids = new ArrayList<>();
-    for (Scheduler cmd : getIntervalCommands()) {
-      ids.add(cmd.getID());
-    }
-    for (Scheduler cmd : getClockBasedCommands()) {
-      ids.add(cmd.getID());
-    }
-    for (Scheduler cmd : getOnceAtBootCommands()) {
-      ids.add(cmd.getID());
-    }
-    return ids;
+  public static boolean addOnceAtBootCommand(AtBoot command) {
+    return registry.add(command);
   }
 
-  public static List<String> getClockBasedSchedulerIDs() {
-    List<String> ids = new ArrayList<>();
-    for (Scheduler cmd : getClockBasedCommands()) {
-      ids.add(cmd.getID());
-    }
-    return ids;
+  public static Collection<String> getAllSchedulerIDs() {
+    return registry.getIDs();
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package net.william.commandscheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Append-only log of scheduler changes, replayed on top of the json5 files
+ * when they are loaded.
+ *
+ * Every record is one line: the CRC32 of the JSON in hex, a tab, and the JSON
+ * itself. A record that was only half written when the server went down has
+ * no newline or a wrong checksum, so it is skipped and cut off the file.
+ *
+ * Appending and truncating only ever happen on the config I/O thread, reading
+ * only happens while that thread is idle.
+ */
+public class ConfigJournal {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  // Record kinds
+  public static final String CREATE = "create";
+  public static final String ACTIVATE = "activate";
+  public static final String ADD_TIME = "addtime";
+  public static final String REMOVE_TIME = "removetime";
+  public static final String RENAME = "rename";
+  public static final String DESCRIPTION = "description";
+  public static final String RAN = "ran";
+  public static final String REMOVE = "remove";
+
+  private final Path path;
+  private FileChannel channel;
+
+  public ConfigJournal(Path path) {
+    this.path = path;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public static byte[] encode(JsonObject record) {
+    String json = record.toString();
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    return (String.format("%08x", crc.getValue()) + "\t" + json + "\n").getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads every intact record. A torn record at the end is cut off, so the
+   * next append starts on a clean line.
+   */
+  public List<JsonObject> read() {
+    List<JsonObject> records = new ArrayList<>();
+    if (!Files.exists(path)) {
+      return records;
+    }
+
+    byte[] data;
+    try {
+      data = Files.readAllBytes(path);
+    } catch (IOException e) {
+      LOGGER.error("Failed to read journal {}: {}", path, e.getMessage());
+      return records;
+    }
+
+    int start = 0;
+    int validEnd = 0;
+    while (start < data.length) {
+      int end = start;
+      while (end < data.length && data[end] != '\n') {
+        end++;
+      }
+      if (end == data.length) {
+        LOGGER.warn("Skipping incomplete record at the end of {}", path.getFileName());
+        break;
+      }
+
+      JsonObject record = decode(new String(data, start, end - start, StandardCharsets.UTF_8));
+      if (record != null) {
+        records.add(record);
+      } else {
+        LOGGER.warn("Skipping corrupt record at byte {} of {}", start, path.getFileName());
+      }
+      start = end + 1;
+      validEnd = start;
+    }
+
+    if (validEnd < data.length) {
+      truncateTo(validEnd);
+    }
+    return records;
+  }
+
+  private static JsonObject decode(String line) {
+    int tab = line.indexOf('\t');
+    if (tab != 8) {
+      return null;
+    }
+    try {
+      String json = line.substring(tab + 1);
+      CRC32 crc = new CRC32();
+      crc.update(json.getBytes(StandardCharsets.UTF_8));
+      if (crc.getValue() != Long.parseLong(line.substring(0, tab), 16)) {
+        return null;
+      }
+      return JsonParser.parseString(json).getAsJsonObject();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  public long size() {
+    try {
+      return Files.exists(path) ? Files.size(path) : 0;
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  public void append(byte[] line) {
+    try {
+      if (channel == null) {
+        Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(line);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      LOGGER.error("Failed to append to journal {}: {}", path, e.getMessage());
+    }
+  }
+
+  /**
+   * Empties the journal, only called once every change in it has been written
+   * to the json5 files.
+   */
+  public void truncate() {
+    close();
+    truncateTo(0);
+  }
+
+  private void truncateTo(long length) {
+    if (!Files.exists(path)) {
+      return;
+    }
+    try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      file.truncate(length);
+    } catch (IOException e) {
+      LOGGER.error("Failed to truncate journal {}: {}", path, e.getMessage());
+    }
+  }
+
+  public void close() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.error("Failed to close journal {}: {}", path, e.getMessage());
+    }
+    channel = null;
+  }
+}
@@ -0,0 +1,243 @@
+package net.william.commandscheduler;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Write-behind saving of the scheduler config files.
+ *
+ * Changes only mark a file as dirty. Once no new change has come in for the
+ * save delay (or the oldest change has waited five times that long), the
+ * server thread copies the schedulers of each dirty file and a single
+ * background thread turns the copies into JSON, writes it to a temp file and
+ * renames it over the old one. A burst of changes therefore ends up as one
+ * write per file, and the server thread never waits on the disk or on Gson.
+ *
+ * With the journal setting on, changes are appended to the journal instead of
+ * marking a whole file dirty. Once the journal grows past its size limit (on
+ * the next tick, not inside the command that made the change), or whenever a
+ * file is flushed anyway, all three files are written and the journal is
+ * emptied behind them on the same thread, so it always only holds what the
+ * files on disk are missing.
+ *
+ * Files written here are also put into the binary config cache, so the next
+ * boot doesn't have to parse them again.
+ */
+public class ConfigPersister {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "CommandScheduler-IO");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // Only touched by the server thread
+  private final EnumSet<Types> dirty = EnumSet.noneOf(Types.class);
+  private long firstDirtyNanos;
+  private long lastDirtyNanos;
+  private long journalBytes;
+  private boolean compactPending;
+
+  private final ConfigJournal journal;
+
+  // Only written by the I/O thread
+  private volatile boolean foldFailed = false;
+  private volatile long saves;
+  private volatile long saveNanos;
+  private volatile long failedSaves;
+
+  public ConfigPersister(Path journalPath) {
+    this.journal = new ConfigJournal(journalPath);
+  }
+
+  public void markDirty(Types type) {
+    long now = System.nanoTime();
+    if (dirty.isEmpty()) {
+      firstDirtyNanos = now;
+    }
+    lastDirtyNanos = now;
+    dirty.add(type);
+  }
+
+  public boolean isDirty() {
+    return !dirty.isEmpty();
+  }
+
+  /**
+   * Saves a single change, either as a journal record or by marking the file
+   * it belongs to as dirty.
+   */
+  public void record(Types type, JsonObject record) {
+    Settings settings = ConfigHandler.getSettings();
+    if (!settings.isJournal()) {
+      markDirty(type);
+      return;
+    }
+
+    byte[] line = ConfigJournal.encode(record);
+    journalBytes += line.length;
+    io.execute(() -> journal.append(line));
+    if (journalBytes >= settings.getJournalMaxBytes()) {
+      compactPending = true;
+    }
+  }
+
+  /**
+   * Folds the journal into fresh config files.
+   */
+  public void compact() {
+    dirty.addAll(EnumSet.allOf(Types.class));
+    flush();
+  }
+
+  /**
+   * Reads the journal so it can be replayed over the files that were just
+   * loaded. Only called while nothing is queued on the I/O thread.
+   */
+  public List<JsonObject> readJournal() {
+    List<JsonObject> records = journal.read();
+    journalBytes = journal.size();
+    if (journalBytes > 0 && !ConfigHandler.getSettings().isJournal()) {
+      // Journal was switched off, fold what is left so it isn't replayed later
+      markDirty(Types.INTERVAL);
+    }
+    return records;
+  }
+
+  public long getJournalBytes() {
+    return journalBytes;
+  }
+
+  /**
+   * Called every tick, compacts a journal that has grown past its limit and
+   * otherwise flushes once the changes have settled.
+   */
+  public void tick() {
+    if (compactPending) {
+      compact();
+      return;
+    }
+    if (dirty.isEmpty()) {
+      return;
+    }
+    long delay = ConfigHandler.getSettings().getSaveDelayNanos();
+    long now = System.nanoTime();
+    if (now - lastDirtyNanos >= delay || now - firstDirtyNanos >= delay * 5) {
+      flush();
+    }
+  }
+
+  /**
+   * Snapshots every dirty file and hands it to the I/O thread.
+   */
+  public void flush() {
+    boolean folding = journalBytes > 0 || foldFailed;
+    if (folding) {
+      // The journal may hold changes to any file
+      dirty.addAll(EnumSet.allOf(Types.class));
+    }
+    boolean cached = ConfigHandler.getSettings().isConfigCache() && !dirty.isEmpty();
+    // Set on the I/O thread if any file of this flush couldn't be written
+    AtomicBoolean failed = new AtomicBoolean();
+    for (Types type : dirty) {
+      Path path = ConfigHandler.getPath(type);
+      List<Scheduler> snapshot = ConfigHandler.snapshot(type);
+      io.execute(() -> {
+        long start = System.nanoTime();
+        JsonElement json = ConfigHandler.toJson(type, snapshot);
+        ConfigCache.Stamp stamp = ConfigHandler.writeAtomically(path, json);
+        recordSave(System.nanoTime() - start, stamp != null);
+        if (stamp == null) {
+          failed.set(true);
+        }
+        if (cached && stamp != null) {
+          ConfigHandler.cacheSnapshot(type, stamp, snapshot);
+        }
+      });
+    }
+    dirty.clear();
+    if (cached) {
+      io.execute(ConfigHandler.getCache()::write);
+    }
+    if (folding) {
+      journalBytes = 0;
+      compactPending = false;
+      io.execute(() -> {
+        // The journal is all that has the changes of a file that failed to write
+        if (failed.get()) {
+          foldFailed = true;
+          LOGGER.warn("Keeping the config journal, not every config file could be written");
+          return;
+        }
+        journal.truncate();
+        foldFailed = false;
+      });
+    }
+  }
+
+  private void recordSave(long nanos, boolean written) {
+    if (written) {
+      saves++;
+      saveNanos += nanos;
+    } else {
+      failedSaves++;
+    }
+  }
+
+  public long getSaves() {
+    return saves;
+  }
+
+  public long getSaveNanos() {
+    return saveNanos;
+  }
+
+  public long getFailedSaves() {
+    return failedSaves;
+  }
+
+  /**
+   * Drops changes that haven't been written yet, used when the files on disk
+   * are about to be read again.
+   */
+  public void discardPending() {
+    dirty.clear();
+  }
+
+  /**
+   * Runs a task on the I/O thread, after every write queued before it.
+   */
+  public void execute(Runnable task) {
+    io.execute(task);
+  }
+
+  /**
+   * Waits for every queued write to finish. Only meant for shutdown and
+   * reloads, never for the tick loop.
+   */
+  public void awaitIdle() {
+    try {
+      io.submit(() -> {
+      }).get(10, java.util.concurrent.TimeUnit.SECONDS);
+    } catch (Exception e) {
+      LOGGER.error("Timed out waiting for config files to be written: {}", e.getMessage());
+    }
+  }
+
+  public void flushAndWait() {
+    flush();
+    awaitIdle();
+  }
+}
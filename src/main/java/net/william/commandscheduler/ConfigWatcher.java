@@ -0,0 +1,321 @@
+package net.william.commandscheduler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Watches the scheduler config files and reloads only the entries that were
+ * edited, so every other scheduler keeps its progress.
+ *
+ * For every file the watcher keeps a fingerprint of each entry as it was last
+ * read, by ID. When a file changes, it is read again on the watcher thread and
+ * only entries whose fingerprint changed are turned into schedulers. The
+ * added, changed and removed entries are queued for the server thread, so
+ * applying an edit costs as much as the edit, not as much as the config.
+ *
+ * Files written by the mod itself are recognised by their stamp. They only
+ * update the fingerprints, the registry already has those changes.
+ */
+public class ConfigWatcher {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  // Editors often write a file in more than one go
+  private static final long SETTLE_MILLIS = 200;
+
+  /**
+   * The entries of one file that changed since it was last read.
+   */
+  public static final class Diff {
+    final Types type;
+    final List<Scheduler> changed = new ArrayList<>();
+    final List<String> removed = new ArrayList<>();
+
+    Diff(Types type) {
+      this.type = type;
+    }
+
+    boolean isEmpty() {
+      return changed.isEmpty() && removed.isEmpty();
+    }
+  }
+
+  private static final class FileState {
+    ConfigCache.Stamp stamp;
+    Map<String, Long> fingerprints = new HashMap<>();
+  }
+
+  private final Path dir;
+  // Guarded by this, only read and replaced while checking a file
+  private final Map<Types, FileState> files = new EnumMap<>(Types.class);
+  // Stamps of the last few files the mod wrote itself, guarded by itself
+  private final Map<Types, ArrayDeque<ConfigCache.Stamp>> written = new EnumMap<>(Types.class);
+  private final Queue<Diff> diffs = new ConcurrentLinkedQueue<>();
+
+  private WatchService service;
+  private Thread thread;
+
+  public ConfigWatcher(Path dir) {
+    this.dir = dir;
+  }
+
+  public void start() {
+    try {
+      service = dir.getFileSystem().newWatchService();
+      dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      LOGGER.error("Failed to watch {}: {}", dir, e.getMessage());
+      return;
+    }
+    thread = new Thread(this::run, "CommandScheduler-Watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void stop() {
+    if (thread == null) {
+      return;
+    }
+    try {
+      service.close();
+    } catch (IOException e) {
+      LOGGER.error("Failed to stop watching {}: {}", dir, e.getMessage());
+    }
+    thread.interrupt();
+    thread = null;
+  }
+
+  /**
+   * Called before the mod replaces a config file, so the change isn't taken
+   * for an edit.
+   */
+  public void expect(Path file, ConfigCache.Stamp stamp) {
+    Types type = typeOf(file.getFileName().toString());
+    if (type == null) {
+      return;
+    }
+    synchronized (written) {
+      ArrayDeque<ConfigCache.Stamp> stamps = written.computeIfAbsent(type, t -> new ArrayDeque<>());
+      if (stamps.size() == 4) {
+        stamps.removeFirst();
+      }
+      stamps.addLast(stamp);
+    }
+  }
+
+  private boolean isOwnWrite(Types type, ConfigCache.Stamp stamp) {
+    synchronized (written) {
+      ArrayDeque<ConfigCache.Stamp> stamps = written.get(type);
+      return stamps != null && stamps.remove(stamp);
+    }
+  }
+
+  public boolean hasChanges() {
+    return !diffs.isEmpty();
+  }
+
+  public Diff poll() {
+    return diffs.poll();
+  }
+
+  /**
+   * Checks every file right away on the calling thread, for the reload
+   * command, and returns everything that changed, including what the
+   * watcher thread found before.
+   */
+  public synchronized List<Diff> checkNow() {
+    for (Types type : Types.values()) {
+      checkAndQueue(type);
+    }
+    List<Diff> result = new ArrayList<>();
+    Diff diff;
+    while ((diff = diffs.poll()) != null) {
+      result.add(diff);
+    }
+    return result;
+  }
+
+  private static Types typeOf(String fileName) {
+    for (Types type : Types.values()) {
+      Path path = ConfigHandler.getPath(type);
+      if (path != null && path.getFileName().toString().equals(fileName)) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  private void run() {
+    // What was loaded is the starting point
+    for (Types type : Types.values()) {
+      checkAndQueue(type);
+    }
+
+    try {
+      while (true) {
+        Set<Types> changed = EnumSet.noneOf(Types.class);
+        WatchKey key = service.take();
+        // Collect events until the files have settled
+        while (key != null) {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path file) {
+              Types type = typeOf(file.getFileName().toString());
+              if (type != null) {
+                changed.add(type);
+              }
+            }
+          }
+          key.reset();
+          key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        for (Types type : changed) {
+          checkAndQueue(type);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Stopped
+    }
+  }
+
+  private synchronized void checkAndQueue(Types type) {
+    Diff diff = check(type);
+    if (diff != null) {
+      diffs.add(diff);
+    }
+  }
+
+  /**
+   * Reads a file again if its stamp changed and returns what changed, or null
+   * if nothing did. The first check of a file only takes its fingerprints.
+   * Only called while holding the lock.
+   */
+  private Diff check(Types type) {
+    Path path = ConfigHandler.getPath(type);
+    if (path == null) {
+      return null;
+    }
+
+    FileState old = files.get(type);
+    FileState state = new FileState();
+    try {
+      state.stamp = ConfigCache.stamp(path);
+      if (old != null && state.stamp.equals(old.stamp)) {
+        return null;
+      }
+      boolean own = isOwnWrite(type, state.stamp);
+
+      Diff diff = old == null || own ? null : new Diff(type);
+      read(path, ConfigHandler.adapterFor(type), old, state, diff);
+      files.put(type, state);
+
+      if (diff != null && old != null) {
+        for (String id : old.fingerprints.keySet()) {
+          if (!state.fingerprints.containsKey(id)) {
+            diff.removed.add(id);
+          }
+        }
+      }
+      return diff == null || diff.isEmpty() ? null : diff;
+    } catch (NoSuchFileException e) {
+      // Deleted or in the middle of being replaced, wait for it to come back
+      return null;
+    } catch (Exception e) {
+      LOGGER.error("Failed to read {}, ignoring the change: {}", path.getFileName(), e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Takes the fingerprint of every entry. With a diff, entries whose
+   * fingerprint differs from the old state are parsed and added to it.
+   */
+  private static void read(Path path, TypeAdapter<? extends Scheduler> adapter, FileState old, FileState state,
+      Diff diff) throws IOException {
+    Set<String> seen = new HashSet<>();
+    try (JsonReader reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+      reader.setLenient(true); // json5 comments
+      if (reader.peek() == JsonToken.END_DOCUMENT) {
+        return;
+      }
+
+      reader.beginArray();
+      while (reader.hasNext()) {
+        JsonElement entry = JsonParser.parseReader(reader);
+        String id = idOf(entry);
+        if (id == null || !seen.add(id)) {
+          continue; // The full load reports these
+        }
+
+        long fingerprint = fingerprint(entry.toString());
+        Long previous = old != null ? old.fingerprints.get(id) : null;
+        if (diff == null || previous != null && previous == fingerprint) {
+          state.fingerprints.put(id, fingerprint);
+          continue;
+        }
+
+        try {
+          diff.changed.add(adapter.fromJsonTree(entry));
+          state.fingerprints.put(id, fingerprint);
+        } catch (JsonParseException | IllegalArgumentException e) {
+          LOGGER.error("Ignoring invalid entry '{}' in {}: {}", id, path.getFileName(), e.getMessage());
+          // Keep the scheduler that is running and compare against it again next time
+          if (previous != null) {
+            state.fingerprints.put(id, previous);
+          }
+        }
+      }
+      reader.endArray();
+    } catch (EOFException e) {
+      // Empty file
+    }
+  }
+
+  private static String idOf(JsonElement entry) {
+    if (!(entry instanceof JsonObject object)) {
+      return null;
+    }
+    JsonElement id = object.get("ID");
+    return id != null && id.isJsonPrimitive() ? id.getAsString() : null;
+  }
+
+  private static long fingerprint(String json) {
+    long h = 1125899906842597L;
+    for (int i = 0; i < json.length(); i++) {
+      h = 31 * h + json.charAt(i);
+    }
+    return h;
+  }
+}
@@ -0,0 +1,179 @@
+package net.william.commandscheduler;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Spreads command execution over several ticks when too much is due at once.
+ *
+ * Every tick gets a budget, counted in commands and/or nanoseconds. Commands
+ * that don't fit are put in a bounded FIFO that is drained first on the
+ * following ticks, so the order of commands, also inside a group, is kept.
+ * If the queue is full, the oldest queued command runs right away, over the
+ * budget, to make room. Nothing is dropped and nothing jumps the queue, and
+ * these runs are counted as overflow.
+ * Every command keeps the scheduler it belongs to, for its stats.
+ */
+public class DispatchQueue {
+
+  private final BiConsumer<Scheduler, String> runner;
+
+  private Scheduler[] owners;
+  private String[] commands;
+  private long[] enqueuedAt;
+  private int head = 0;
+  private int size = 0;
+
+  private long tick = 0;
+  private int maxCommands = 0;
+  private long maxNanos = 0;
+  private int usedCommands = 0;
+  private long usedNanos = 0;
+
+  private long deferredTotal = 0;
+  private long overflowTotal = 0;
+  private long drainedTotal = 0;
+  private long delayTicksTotal = 0;
+  private long maxDelayTicks = 0;
+  private int peakDepth = 0;
+
+  public DispatchQueue(BiConsumer<Scheduler, String> runner, int capacity) {
+    this.runner = runner;
+    this.owners = new Scheduler[capacity];
+    this.commands = new String[capacity];
+    this.enqueuedAt = new long[capacity];
+  }
+
+  /**
+   * Resets the budget for a new tick and runs as much of the backlog as the
+   * budget allows.
+   */
+  public void beginTick(long tick, Settings settings) {
+    this.tick = tick;
+    this.maxCommands = settings.getMaxCommandsPerTick();
+    this.maxNanos = settings.getTickBudgetNanos();
+    this.usedCommands = 0;
+    this.usedNanos = 0;
+
+    if (settings.getSpilloverCapacity() != commands.length) {
+      resize(settings.getSpilloverCapacity());
+    }
+
+    while (size > 0 && hasBudget()) {
+      runHead();
+    }
+  }
+
+  /**
+   * Runs the command now if the budget allows it and nothing is waiting
+   * before it, otherwise queues it for a later tick.
+   */
+  public void submit(Scheduler owner, String command) {
+    if (size == 0 && hasBudget()) {
+      run(owner, command);
+      return;
+    }
+
+    if (size == commands.length) {
+      // Full, the oldest command runs over budget so this one fits behind it
+      overflowTotal++;
+      runHead();
+    }
+
+    int tail = (head + size) % commands.length;
+    owners[tail] = owner;
+    commands[tail] = command;
+    enqueuedAt[tail] = tick;
+    size++;
+    deferredTotal++;
+    peakDepth = Math.max(peakDepth, size);
+  }
+
+  private void runHead() {
+    Scheduler owner = owners[head];
+    String command = commands[head];
+    long delay = tick - enqueuedAt[head];
+    owners[head] = null;
+    commands[head] = null;
+    head = (head + 1) % commands.length;
+    size--;
+
+    drainedTotal++;
+    delayTicksTotal += delay;
+    maxDelayTicks = Math.max(maxDelayTicks, delay);
+    run(owner, command);
+  }
+
+  private boolean hasBudget() {
+    return (maxCommands == 0 || usedCommands < maxCommands)
+        && (maxNanos == 0 || usedNanos < maxNanos);
+  }
+
+  private void run(Scheduler owner, String command) {
+    usedCommands++;
+    if (maxNanos == 0) {
+      runner.accept(owner, command);
+      return;
+    }
+    long start = System.nanoTime();
+    runner.accept(owner, command);
+    usedNanos += System.nanoTime() - start;
+  }
+
+  private void resize(int capacity) {
+    if (capacity < size) {
+      // Never lose queued commands, shrink once the backlog is smaller
+      return;
+    }
+    Scheduler[] newOwners = new Scheduler[capacity];
+    String[] newCommands = new String[capacity];
+    long[] newEnqueuedAt = new long[capacity];
+    for (int i = 0; i < size; i++) {
+      int index = (head + i) % commands.length;
+      newOwners[i] = owners[index];
+      newCommands[i] = commands[index];
+      newEnqueuedAt[i] = enqueuedAt[index];
+    }
+    owners = newOwners;
+    commands = newCommands;
+    enqueuedAt = newEnqueuedAt;
+    head = 0;
+  }
+
+  public int getDepth() {
+    return size;
+  }
+
+  public int getCapacity() {
+    return commands.length;
+  }
+
+  public int getPeakDepth() {
+    return peakDepth;
+  }
+
+  public long getDeferredTotal() {
+    return deferredTotal;
+  }
+
+  /**
+   * Queued commands that ran over budget because the queue was full.
+   */
+  public long getOverflowTotal() {
+    return overflowTotal;
+  }
+
+  public long getMaxDelayTicks() {
+    return maxDelayTicks;
+  }
+
+  public double getAverageDelayTicks() {
+    return drainedTotal == 0 ? 0 : (double) delayTicksTotal / drainedTotal;
+  }
+
+  /**
+   * Ticks the oldest queued command has been waiting.
+   */
+  public long getOldestWaitTicks() {
+    return size == 0 ? 0 : tick - enqueuedAt[head];
+  }
+}
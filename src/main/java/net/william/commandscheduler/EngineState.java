@@ -0,0 +1,33 @@
+package net.william.commandscheduler;
+
+import java.util.List;
+
+/**
+ * The schedulers and timers the scheduling engine runs on. On a server that
+ * is the loaded config, see ConfigHandler.getEngineState(); simulations and
+ * tests can hand the engine a set of their own.
+ */
+public interface EngineState {
+
+  Settings getSettings();
+
+  List<AtBoot> getOnceAtBootCommands();
+
+  IntervalTimer getIntervalTimer();
+
+  WallClockTimer getWallClockTimer();
+
+  ClockIndex getClockIndex();
+
+  /**
+   * The scheduler currently registered under the ID, or null.
+   */
+  Scheduler getCommandById(String id);
+
+  SchedulerMetrics getMetrics();
+
+  /**
+   * Called once an interval that runs instantly has had its first run.
+   */
+  void recordRanInstantly(Interval ic);
+}
@@ -0,0 +1,234 @@
+package net.william.commandscheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prefix trie of scheduler IDs for tab completion.
+ *
+ * IDs are matched case-insensitively, like the client filters suggestions.
+ * Every ID belongs to one or more views (all, active, inactive, clock-based),
+ * and every node counts how many IDs of each view are below it, so a lookup
+ * skips whole branches without a match and only walks what it returns.
+ */
+public class IdTrie {
+
+  public static final int ALL = 0;
+  public static final int ACTIVE = 1;
+  public static final int INACTIVE = 2;
+  public static final int CLOCK_BASED = 3;
+  private static final int VIEWS = 4;
+
+  private static final char[] NO_KEYS = new char[0];
+  private static final Node[] NO_CHILDREN = new Node[0];
+
+  private static final class Entry {
+    final String id;
+    final int views;
+
+    Entry(String id, int views) {
+      this.id = id;
+      this.views = views;
+    }
+  }
+
+  private static final class Node {
+    // Children sorted by key, so lookups come out in alphabetical order
+    char[] keys = NO_KEYS;
+    Node[] children = NO_CHILDREN;
+    final int[] counts = new int[VIEWS];
+    // IDs ending here, more than one only if they differ in case
+    List<Entry> entries;
+
+    Node child(char key) {
+      int index = Arrays.binarySearch(keys, key);
+      return index >= 0 ? children[index] : null;
+    }
+
+    Node childOrCreate(char key) {
+      int index = Arrays.binarySearch(keys, key);
+      if (index >= 0) {
+        return children[index];
+      }
+      int insert = -index - 1;
+      char[] newKeys = new char[keys.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(keys, 0, newKeys, 0, insert);
+      System.arraycopy(children, 0, newChildren, 0, insert);
+      System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+      System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+      Node node = new Node();
+      newKeys[insert] = key;
+      newChildren[insert] = node;
+      keys = newKeys;
+      children = newChildren;
+      return node;
+    }
+
+    void removeChild(char key) {
+      int index = Arrays.binarySearch(keys, key);
+      if (index < 0) {
+        return;
+      }
+      char[] newKeys = new char[keys.length - 1];
+      Node[] newChildren = new Node[children.length - 1];
+      System.arraycopy(keys, 0, newKeys, 0, index);
+      System.arraycopy(children, 0, newChildren, 0, index);
+      System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+      System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+      keys = newKeys;
+      children = newChildren;
+    }
+  }
+
+  private Node root = new Node();
+
+  public static int viewsOf(Scheduler scheduler) {
+    int views = 1 << ALL;
+    views |= 1 << (scheduler.isActive() ? ACTIVE : INACTIVE);
+    if (scheduler instanceof ClockBased) {
+      views |= 1 << CLOCK_BASED;
+    }
+    return views;
+  }
+
+  private static String key(String id) {
+    return id.toLowerCase(Locale.ROOT);
+  }
+
+  public void clear() {
+    root = new Node();
+  }
+
+  public void add(Scheduler scheduler) {
+    add(scheduler.getID(), viewsOf(scheduler));
+  }
+
+  public void add(String id, int views) {
+    String key = key(id);
+    Node node = root;
+    count(node, views, 1);
+    for (int i = 0; i < key.length(); i++) {
+      node = node.childOrCreate(key.charAt(i));
+      count(node, views, 1);
+    }
+    if (node.entries == null) {
+      node.entries = new ArrayList<>(1);
+    }
+    node.entries.add(new Entry(id, views));
+  }
+
+  /**
+   * Removes an ID, returns false if it wasn't in the trie.
+   */
+  public boolean remove(String id) {
+    String key = key(id);
+    Node[] path = new Node[key.length() + 1];
+    Node node = root;
+    path[0] = node;
+    for (int i = 0; i < key.length(); i++) {
+      node = node.child(key.charAt(i));
+      if (node == null) {
+        return false;
+      }
+      path[i + 1] = node;
+    }
+
+    Entry entry = null;
+    if (node.entries != null) {
+      for (Entry candidate : node.entries) {
+        if (candidate.id.equals(id)) {
+          entry = candidate;
+          break;
+        }
+      }
+    }
+    if (entry == null) {
+      return false;
+    }
+    node.entries.remove(entry);
+    if (node.entries.isEmpty()) {
+      node.entries = null;
+    }
+
+    for (int i = key.length(); i >= 0; i--) {
+      count(path[i], entry.views, -1);
+      if (i > 0 && path[i].counts[ALL] == 0) {
+        path[i - 1].removeChild(key.charAt(i - 1));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Moves an ID to the views the scheduler is in now, after its active state
+   * changed.
+   */
+  public void update(Scheduler scheduler) {
+    if (remove(scheduler.getID())) {
+      add(scheduler);
+    }
+  }
+
+  private static void count(Node node, int views, int delta) {
+    for (int view = 0; view < VIEWS; view++) {
+      if ((views & (1 << view)) != 0) {
+        node.counts[view] += delta;
+      }
+    }
+  }
+
+  private Node find(String prefix) {
+    String key = key(prefix);
+    Node node = root;
+    for (int i = 0; i < key.length() && node != null; i++) {
+      node = node.child(key.charAt(i));
+    }
+    return node;
+  }
+
+  /**
+   * How many IDs of a view start with the prefix.
+   */
+  public int count(String prefix, int view) {
+    Node node = find(prefix);
+    return node == null ? 0 : node.counts[view];
+  }
+
+  /**
+   * IDs of a view that start with the prefix, in alphabetical order and at
+   * most limit of them.
+   */
+  public List<String> find(String prefix, int view, int limit) {
+    List<String> result = new ArrayList<>();
+    Node node = find(prefix);
+    if (node != null && limit > 0) {
+      collect(node, view, limit, result);
+    }
+    return result;
+  }
+
+  private static void collect(Node node, int view, int limit, List<String> result) {
+    if (node.counts[view] == 0) {
+      return;
+    }
+    if (node.entries != null) {
+      for (Entry entry : node.entries) {
+        if ((entry.views & (1 << view)) != 0) {
+          result.add(entry.id);
+          if (result.size() >= limit) {
+            return;
+          }
+        }
+      }
+    }
+    for (Node child : node.children) {
+      collect(child, view, limit, result);
+      if (result.size() >= limit) {
+        return;
+      }
+    }
+  }
+}
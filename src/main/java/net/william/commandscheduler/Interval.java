@@ -2,6 +2,7 @@ package net.william.commandscheduler;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Interval extends Scheduler {
 
@@ -9,11 +10,27 @@ public class Interval extends Scheduler {
     private int interval;
     private boolean random;
     private boolean runInstantly = false;
+    private Boolean spread; // null follows the global setting
+    private boolean wallClock; // real time instead of server ticks
     private List<List<String>> commandGroups; // ✅ Only groups now
 
     private transient int tickCounter;
     private transient boolean hasRun = false;
 
+    // Tick the server thread expects this interval on, used by BackgroundPlanner
+    transient long dueTick = -1;
+
+    // Owned by IntervalWheel: absolute due tick and the slot list it is linked into
+    transient long wheelDue;
+    transient int wheelLevel = IntervalWheel.UNLINKED;
+    transient int wheelSlot;
+    transient Interval wheelPrev;
+    transient Interval wheelNext;
+
+    // Owned by WallClockTimer: System.nanoTime() deadline and whether it is armed
+    transient long wallDeadline;
+    transient int wallState = WallClockTimer.UNLINKED;
+
     // Legacy single command constructor
     public Interval(String ID, String command, int interval, String unit, boolean runInstantly) {
         super(ID, true, command);
@@ -36,6 +53,12 @@ public class Interval extends Scheduler {
         this.setRunInstantly(runInstantly);
         resetTickCounter();
     }
+
+    @Override
+    public Types getType() {
+        return Types.INTERVAL;
+    }
+
     // ✅ No more stray "commands" field
     public int getInterval() {
         return interval;
@@ -64,6 +87,38 @@ public class Interval extends Scheduler {
         this.runInstantly = runInstantly;
     }
 
+    public Boolean getSpread() {
+        return spread;
+    }
+
+    public void setSpread(Boolean spread) {
+        this.spread = spread;
+    }
+
+    public boolean isSpread() {
+        return spread != null ? spread : ConfigHandler.getSettings().isSpreadLoad();
+    }
+
+    /**
+     * Offset within the period that a spread interval runs on, so intervals
+     * with the same period don't all run on the same tick.
+     */
+    public int getPhaseOffset() {
+        return Math.floorMod(spreadHash(ID), getPeriodTicks());
+    }
+
+    /**
+     * The first tick after the given one this interval should run on when
+     * it runs on schedule.
+     */
+    public long nextDueAfter(long tick) {
+        if (!isSpread()) {
+            return tick + getPeriodTicks();
+        }
+        long next = tick + 1;
+        return next + Math.floorMod(getPhaseOffset() - next, (long) getPeriodTicks());
+    }
+
     public static boolean isValidInterval(int interval) {
         return interval > 0;
     }
@@ -76,8 +131,24 @@ public class Interval extends Scheduler {
         return tickCounter;
     }
 
-    public void tick() {
-        tickCounter++;
+    public void setTickCounter(int tickCounter) {
+        this.tickCounter = tickCounter;
+    }
+
+    public int getPeriodTicks() {
+        return TimeUnit.getTickCountForUnits(unit, interval);
+    }
+
+    public long getPeriodNanos() {
+        return getPeriodTicks() * WallClockTimer.NANOS_PER_TICK;
+    }
+
+    public boolean isWallClock() {
+        return wallClock;
+    }
+
+    public void setWallClock(boolean wallClock) {
+        this.wallClock = wallClock;
     }
 
     public void run() {
@@ -89,19 +160,49 @@ public class Interval extends Scheduler {
         return hasRun;
     }
 
+    /**
+     * Carries over how far the interval this one replaces got, so editing an
+     * interval doesn't restart its period.
+     */
+    void keepProgress(Interval old) {
+        this.tickCounter = old.tickCounter;
+        this.hasRun = old.hasRun;
+    }
+
+    /**
+     * Puts back the progress saved in the runtime state file on boot.
+     */
+    void restoreProgress(int tickCounter, boolean hasRun) {
+        this.tickCounter = Math.max(0, tickCounter);
+        this.hasRun = hasRun;
+    }
+
     public void fastForwardUntilNextRun() {
-        tickCounter = TimeUnit.getTickCountForUnits(unit, interval);
+        tickCounter = getPeriodTicks();
     }
 
     // Pick a group (random or first)
-    public java.util.List<String> getCommandGroup() {
+    public List<String> getCommandGroup() {
         if (commandGroups != null && !commandGroups.isEmpty()) {
             if (random) {
-                return commandGroups.get(new java.util.Random().nextInt(commandGroups.size()));
+                return commandGroups.get(ThreadLocalRandom.current().nextInt(commandGroups.size()));
             }
             return commandGroups.get(0);
         }
-        return new java.util.ArrayList<>();
+        return List.of();
+    }
+
+    public List<List<String>> getCommandGroups() {
+        return commandGroups;
+    }
+
+    @Override
+    public List<String> getAllCommands() {
+        List<String> all = new ArrayList<>();
+        for (List<String> group : commandGroups) {
+            all.addAll(group);
+        }
+        return all;
     }
 
     public boolean isRandom() {
@@ -111,8 +212,8 @@ public class Interval extends Scheduler {
     @Override
     public String toString() {
         return String.format(
-                "IntervalCommand{id='%s', active=%s, interval=%d, unit=%s, runAtStart=%s, random=%s, groups=%s}",
-                ID, active, interval, unit.toString().toLowerCase(), runInstantly, random, commandGroups
+                "IntervalCommand{id='%s', active=%s, interval=%d, unit=%s, runAtStart=%s, random=%s, spread=%s, wallClock=%s, groups=%s}",
+                ID, active, interval, unit.toString().toLowerCase(), runInstantly, random, spread, wallClock, commandGroups
         );
     }
 }
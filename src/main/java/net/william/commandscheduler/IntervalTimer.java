@@ -0,0 +1,39 @@
+package net.william.commandscheduler;
+
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of when active intervals are due, in server ticks.
+ */
+public interface IntervalTimer {
+
+  /**
+   * Arms the interval, continuing from the progress it has made so far.
+   */
+  void schedule(Interval ic);
+
+  /**
+   * Disarms the interval and stores its progress in its tick counter.
+   */
+  void unschedule(Interval ic);
+
+  void clear();
+
+  /**
+   * How many ticks of its period the interval has done, without disarming
+   * it. Same as its tick counter while it isn't armed.
+   */
+  int progressOf(Interval ic);
+
+  /**
+   * Moves one server tick forward and hands every interval due on it to the
+   * consumer. Intervals are re-armed for their next run unless the consumer
+   * disarmed or re-armed them itself.
+   */
+  void advance(Consumer<Interval> onDue);
+
+  long getCurrentTick();
+
+  default void shutdown() {
+  }
+}
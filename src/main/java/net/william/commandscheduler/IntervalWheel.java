@@ -0,0 +1,221 @@
+package net.william.commandscheduler;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel for interval schedulers.
+ *
+ * Every armed Interval is stored by the absolute tick it is due on, in one of
+ * four levels (ticks, seconds, minutes, hours) plus an overflow list for
+ * anything more than a day away. Advancing a tick only touches the slot that
+ * is due, and cascades a higher level slot down whenever the level below it
+ * wraps. Schedulers are linked intrusively, so arming and disarming is O(1).
+ */
+public class IntervalWheel implements IntervalTimer {
+
+  private static final int[] SLOTS = { 20, 60, 60, 24 };
+  private static final long[] SPAN = { 1, TimeUnit.TICKS_PER_SECOND, TimeUnit.TICKS_PER_MINUTE,
+      TimeUnit.TICKS_PER_HOUR };
+  private static final long[] RANGE = { TimeUnit.TICKS_PER_SECOND, TimeUnit.TICKS_PER_MINUTE,
+      TimeUnit.TICKS_PER_HOUR, TimeUnit.TICKS_PER_DAY };
+
+  // Values for Interval.wheelLevel that are not a real level
+  static final int UNLINKED = -1;
+  static final int FIRING = -2;
+  private static final int OVERFLOW = SLOTS.length;
+
+  private final Interval[][] heads = new Interval[SLOTS.length + 1][];
+  private long currentTick = 0;
+  private int size = 0;
+
+  public IntervalWheel() {
+    this(0);
+  }
+
+  public IntervalWheel(long currentTick) {
+    for (int level = 0; level < SLOTS.length; level++) {
+      heads[level] = new Interval[SLOTS[level]];
+    }
+    heads[OVERFLOW] = new Interval[1];
+    this.currentTick = currentTick;
+  }
+
+  @Override
+  public long getCurrentTick() {
+    return currentTick;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isScheduled(Interval ic) {
+    return ic.wheelLevel != UNLINKED;
+  }
+
+  /**
+   * Arms the interval based on its progress. A scheduler that should run
+   * instantly and hasn't run yet is due on the very next tick. Spread
+   * intervals are lined up with their phase offset instead.
+   */
+  @Override
+  public void schedule(Interval ic) {
+    scheduleAt(ic, firstDue(ic, currentTick));
+  }
+
+  /**
+   * The tick an interval that is armed on the given tick is first due on.
+   */
+  static long firstDue(Interval ic, long currentTick) {
+    if (!ic.hasRan() && ic.shouldRunInstantly()) {
+      ic.fastForwardUntilNextRun();
+    } else if (ic.isSpread()) {
+      return ic.nextDueAfter(currentTick);
+    }
+    long remaining = ic.getPeriodTicks() - ic.getTickCounter();
+    return currentTick + Math.max(1, remaining);
+  }
+
+  public void scheduleAt(Interval ic, long dueTick) {
+    if (ic.wheelLevel >= 0) {
+      unlink(ic);
+    }
+    ic.wheelDue = Math.max(dueTick, currentTick + 1);
+    insert(ic);
+  }
+
+  /**
+   * Disarms the interval and stores how far it got, so that scheduling it
+   * again continues where it left off.
+   */
+  @Override
+  public void unschedule(Interval ic) {
+    if (ic.wheelLevel >= 0) {
+      ic.setTickCounter((int) Math.max(0, ic.getPeriodTicks() - (ic.wheelDue - currentTick)));
+    }
+    remove(ic);
+  }
+
+  @Override
+  public int progressOf(Interval ic) {
+    if (ic.wheelLevel < 0) {
+      return ic.getTickCounter();
+    }
+    return (int) Math.max(0, ic.getPeriodTicks() - (ic.wheelDue - currentTick));
+  }
+
+  /**
+   * Disarms the interval without touching its progress.
+   */
+  public void remove(Interval ic) {
+    if (ic.wheelLevel == FIRING) {
+      ic.wheelLevel = UNLINKED;
+      return;
+    }
+    if (ic.wheelLevel == UNLINKED) {
+      return;
+    }
+    unlink(ic);
+  }
+
+  @Override
+  public void clear() {
+    for (Interval[] level : heads) {
+      for (int slot = 0; slot < level.length; slot++) {
+        Interval node = level[slot];
+        while (node != null) {
+          Interval next = node.wheelNext;
+          node.wheelLevel = UNLINKED;
+          node.wheelPrev = null;
+          node.wheelNext = null;
+          node = next;
+        }
+        level[slot] = null;
+      }
+    }
+    size = 0;
+  }
+
+  @Override
+  public void advance(Consumer<Interval> onDue) {
+    long tick = ++currentTick;
+
+    // Cascade from the top, so entries can fall through several levels
+    if (tick % TimeUnit.TICKS_PER_DAY == 0) {
+      cascade(OVERFLOW, 0);
+    }
+    for (int level = SLOTS.length - 1; level > 0; level--) {
+      if (tick % SPAN[level] == 0) {
+        cascade(level, (int) ((tick / SPAN[level]) % SLOTS[level]));
+      }
+    }
+
+    Interval[] due = heads[0];
+    int slot = (int) (tick % SLOTS[0]);
+    Interval ic;
+    while ((ic = due[slot]) != null) {
+      unlink(ic);
+      ic.wheelLevel = FIRING;
+      onDue.accept(ic);
+      if (ic.wheelLevel == FIRING) {
+        ic.wheelLevel = UNLINKED;
+        scheduleAt(ic, ic.nextDueAfter(tick));
+      }
+    }
+  }
+
+  private void cascade(int level, int slot) {
+    Interval node = heads[level][slot];
+    heads[level][slot] = null;
+    while (node != null) {
+      Interval next = node.wheelNext;
+      node.wheelLevel = UNLINKED;
+      node.wheelPrev = null;
+      node.wheelNext = null;
+      size--;
+      insert(node);
+      node = next;
+    }
+  }
+
+  private void insert(Interval ic) {
+    long due = ic.wheelDue;
+    long delta = due - currentTick;
+
+    int level = OVERFLOW;
+    int slot = 0;
+    for (int l = 0; l < SLOTS.length; l++) {
+      if (delta < RANGE[l]) {
+        level = l;
+        slot = (int) ((due / SPAN[l]) % SLOTS[l]);
+        break;
+      }
+    }
+
+    Interval head = heads[level][slot];
+    ic.wheelPrev = null;
+    ic.wheelNext = head;
+    if (head != null) {
+      head.wheelPrev = ic;
+    }
+    heads[level][slot] = ic;
+    ic.wheelLevel = level;
+    ic.wheelSlot = slot;
+    size++;
+  }
+
+  private void unlink(Interval ic) {
+    if (ic.wheelPrev != null) {
+      ic.wheelPrev.wheelNext = ic.wheelNext;
+    } else {
+      heads[ic.wheelLevel][ic.wheelSlot] = ic.wheelNext;
+    }
+    if (ic.wheelNext != null) {
+      ic.wheelNext.wheelPrev = ic.wheelPrev;
+    }
+    ic.wheelPrev = null;
+    ic.wheelNext = null;
+    ic.wheelLevel = UNLINKED;
+    size--;
+  }
+}
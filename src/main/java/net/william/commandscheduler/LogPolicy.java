@@ -0,0 +1,30 @@
+package net.william.commandscheduler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * How the runs of a scheduler are written to the server log.
+ */
+public enum LogPolicy {
+    OFF,        // Not at all
+    SAMPLED,    // One run in every logSampleRate
+    AGGREGATED, // One line per scheduler per minute with counts
+    FULL;       // Every run
+
+    public static LogPolicy fromString(String input) throws IllegalArgumentException {
+        for (LogPolicy policy : LogPolicy.values()) {
+            if (policy.name().equalsIgnoreCase(input)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Invalid log policy: " + input);
+    }
+
+    public static List<String> getAllNames() {
+        return Arrays.stream(values())
+                .map(LogPolicy::name)
+                .map(String::toLowerCase)
+                .toList();
+    }
+}
@@ -2,13 +2,13 @@ package net.william.commandscheduler;
 
 import net.fabricmc.api.ModInitializer;
 
-import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -17,7 +17,10 @@ import org.slf4j.LoggerFactory;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.command.ServerCommandSource;
@@ -35,9 +38,6 @@ public class Main implements ModInitializer {
 
   private static final String MOD_ID = "commandscheduler";
 
-  // Boot commands runs 15 seconds after boot
-  private static final int bootDelaySeconds = 15;
-
   // Removal confirmation needed within 30 seconds
   private static final int removalTimeSeconds = 30;
 
@@ -47,10 +47,11 @@ public class Main implements ModInitializer {
   // How many schedulers should be listed when running list command
   private static final int listingsPerPage = 10;
 
+  // How many schedulers the stats command ranks
+  private static final int statsTopCount = 10;
+
   public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
   private static final Map<UUID, PendingRemoval> pendingRemovals = new HashMap<>();
-  private static int bootDelayTicks = 0;
-  private static boolean ranBootCommands = false;
 
   @Override
   public void onInitialize() {
@@ -61,72 +62,67 @@ public class Main implements ModInitializer {
     LOGGER.info("CommandScheduler initialized.");
     ServerLifecycleEvents.SERVER_STARTING.register(server -> registerUserCommands(server));
 
-    ServerTickEvents.START_SERVER_TICK.register(server -> {
-
-      // At boot commands runs here!
-      bootDelayTicks++;
-      if (!ranBootCommands && bootDelayTicks >= (bootDelaySeconds * TimeUnit.TICKS_PER_SECOND)) {
-        ranBootCommands = true;
+    // Cached parse results point into the command tree, which is rebuilt on datapack reloads
+    ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resourceManager, success) -> parseCache.clear());
+    ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+      parseCache.clear();
+      engine.reset();
+      metricsExporter.stop();
+    });
 
-        for (AtBoot oc : ConfigHandler.getOnceAtBootCommands()) {
-          if (!oc.isExpired() && oc.isActive()) {
-            runScheduledCommand(server, oc.getCommand());
-            oc.setExpired();
-          }
-        }
-      }
+    // Make sure pending config changes reach the disk before the server goes away
+    ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+      engine.flushLog();
+      ConfigHandler.getPersister().flushAndWait();
+      ConfigHandler.saveState();
+    });
 
-      // Interval commands runs here!
-      List<Interval> commands = new ArrayList<>(ConfigHandler.getIntervalCommands());
-      for (Interval ic : commands) {
-        if (!ic.isActive())
-          continue;
-        ic.tick();
-        int ticks = TimeUnit.getTickCountForUnits(ic.getUnit(), ic.getInterval());
-
-        if (!ic.hasRan() && ic.shouldRunInstantly()) {
-          ic.fastForwardUntilNextRun();
-          ic.setRunInstantly(false);
-          ConfigHandler.saveIntervalCommands();
-        }
+    ServerTickEvents.START_SERVER_TICK.register(this::onServerTick);
+  }
 
-        if (ic.getTickCounter() >= ticks && ic.isActive()) {
-            for (String cmd : ic.getCommandGroup()) {
-                runScheduledCommand(server, cmd);
-            }
-            ic.run();
-        }
-      }
+  // The server the current tick runs on, so the command sink doesn't capture it each tick
+  private MinecraftServer tickServer;
+  private final CaptureOutput captureOutput = new CaptureOutput();
+  private final ParseCache parseCache = new ParseCache(captureOutput);
+  private final MetricsExporter metricsExporter = new MetricsExporter();
+  private final SchedulingEngine engine = new SchedulingEngine(ConfigHandler.getEngineState(), WallClock.SYSTEM,
+      this::runScheduledCommand, this::housekeeping);
+
+  // Package-private for the benchmarks, which tick without a server
+  void onServerTick(MinecraftServer server) {
+    tickServer = server;
+    engine.tick();
+  }
 
-      // Clock based commands runs here!
-      LocalTime now = LocalTime.now();
-      int hour = now.getHour();
-      int minute = now.getMinute();
-      for (ClockBased cc : ConfigHandler.getClockBasedCommands()) {
-        if (!cc.isActive())
-          continue;
-        for (int[] t : cc.getTimes()) {
-          if (t[0] == hour && t[1] == minute) {
-            if (cc.run(hour, minute)) {
-              runScheduledCommand(server, cc.getCommand());
-            }
-            break;
-          }
-        }
-      }
-    });
+  private void housekeeping() {
+    ConfigHandler.applyFileChanges();
+    ConfigHandler.checkpointState();
+    ConfigHandler.getPersister().tick();
+    metricsExporter.tick(engine);
   }
 
-  private void runScheduledCommand(MinecraftServer server, String command) {
+  private boolean runScheduledCommand(Scheduler owner, String command) {
+    MinecraftServer server = tickServer;
+    OutputMode mode = owner.getOutput();
     try {
       var dispatcher = server != null ? server.getCommandManager().getDispatcher() : null;
       if (dispatcher != null) {
-        var parseResults = dispatcher.parse(command, server.getCommandSource());
-        dispatcher.execute(parseResults);
+        var parseResults = parseCache.get(server, mode, command);
+        if (mode == OutputMode.CAPTURE) {
+          captureOutput.begin();
+          int result = dispatcher.execute(parseResults);
+          owner.capture(captureOutput.take(), result, engine.getClock().currentTimeMillis());
+        } else {
+          dispatcher.execute(parseResults);
+        }
       }
-      LOGGER.info("Scheduled command ran: {}", command);
+      return true;
     } catch (CommandSyntaxException e) {
+      if (mode == OutputMode.CAPTURE) {
+        owner.capture(e.getMessage(), 0, engine.getClock().currentTimeMillis());
+      }
       LOGGER.warn("Failed to run command '{}': {}", command, e.getMessage());
+      return false;
     }
   }
 
@@ -185,10 +181,46 @@ public class Main implements ModInitializer {
               return 1;
             }))
 
+        // Command to show the state of the dispatch queue
+        .then(literal("status")
+            .executes(ctx -> {
+              Messages.sendStatus(ctx.getSource(), engine.getDispatchQueue(), parseCache, ConfigHandler.getSettings());
+              return 1;
+            }))
+
+        // Command to show how long each part of the mod's tick handler takes
+        .then(literal("profile")
+            .executes(ctx -> {
+              Messages.sendProfile(ctx.getSource(), engine.getProfiler(), ConfigHandler.getSettings());
+              return 1;
+            }))
+
+        // Command to show which schedulers' commands take the most time
+        .then(literal("stats")
+            .executes(ctx -> sendStatsTop(ctx.getSource(), false))
+            .then(literal("top")
+                .executes(ctx -> sendStatsTop(ctx.getSource(), false))
+                .then(literal("total")
+                    .executes(ctx -> sendStatsTop(ctx.getSource(), false)))
+                .then(literal("p99")
+                    .executes(ctx -> sendStatsTop(ctx.getSource(), true))))
+            .then(argument("id", StringArgumentType.word())
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.ALL))
+                .executes(ctx -> {
+                  String id = StringArgumentType.getString(ctx, "id");
+                  if (ConfigHandler.getCommandById(id) == null) {
+                    Messages.sendIdNotFound(ctx, id);
+                    return 0;
+                  }
+                  Messages.sendSchedulerStats(ctx.getSource(), id, ConfigHandler.getMetrics().get(id));
+                  return 1;
+                })))
+
         // Command for force reloading config files. Needed if they are manually changed
         .then(literal("reload")
             .executes(ctx -> {
               ConfigHandler.reloadConfigs();
+              parseCache.clear();
               Messages.sendReloadSuccess(ctx);
               return 1;
             }))
@@ -197,100 +229,30 @@ public class Main implements ModInitializer {
         .then(literal("list")
 
             // Command to list all active schedulers
-            .then(literal("active")
-                .executes(ctx -> {
-                  ServerCommandSource source = ctx.getSource();
-
-                  Messages.sendListHeader(source, "Active Interval Commands");
-                  Messages.sendList(source, ConfigHandler.getIntervalCommands(), true);
-
-                  Messages.sendListHeader(source, "Active Clock-Based Commands");
-                  Messages.sendList(source, ConfigHandler.getClockBasedCommands(), true);
-
-                  Messages.sendListHeader(source, "Active Run Once Commands");
-                  Messages.sendList(source, ConfigHandler.getOnceAtBootCommands(), true);
-
-                  return 1;
-                }))
+            .then(listSections("active", true))
 
             // Command to list all inactive schedulers
-            .then(literal("inactive")
-                .executes(ctx -> {
-                  ServerCommandSource source = ctx.getSource();
-
-                  Messages.sendListHeader(source, "Inactive Interval Commands");
-                  Messages.sendList(source, ConfigHandler.getIntervalCommands(), false);
-
-                  Messages.sendListHeader(source, "Inactive Clock-Based Commands");
-                  Messages.sendList(source, ConfigHandler.getClockBasedCommands(), false);
-
-                  Messages.sendListHeader(source, "Inactive Run Once Commands");
-                  Messages.sendList(source, ConfigHandler.getOnceAtBootCommands(), false);
-
-                  return 1;
-                }))
+            .then(listSections("inactive", false))
 
             // Command to list all interval schedulers
-            .then(literal(Types.INTERVAL.name)
-                .executes(ctx -> {
-                  Messages.sendListOfType(ctx.getSource(), ConfigHandler.getIntervalCommands(), 1,
-                      "Interval Schedulers",
-                      listingsPerPage);
-                  return 1;
-                })
-                .then(argument("page", IntegerArgumentType.integer(1))
-                    .executes(ctx -> {
-                      int page = IntegerArgumentType.getInteger(ctx, "page");
-                      Messages.sendListOfType(ctx.getSource(), ConfigHandler.getIntervalCommands(), page,
-                          "Interval Schedulers", listingsPerPage);
-                      return 1;
-                    })))
+            .then(listPages(Types.INTERVAL.name, ConfigHandler.getRegistry().getSorted(Types.INTERVAL),
+                "Interval Schedulers"))
 
             // Command to list all clockbased schedulers
-            .then(literal(Types.CLOCKBASED.name)
-                .executes(ctx -> {
-                  Messages.sendListOfType(ctx.getSource(), ConfigHandler.getClockBasedCommands(), 1,
-                      "Clock-Based Schedulers", listingsPerPage);
-                  return 1;
-                })
-                .then(argument("page", IntegerArgumentType.integer(1))
-                    .executes(ctx -> {
-                      int page = IntegerArgumentType.getInteger(ctx, "page");
-                      Messages.sendListOfType(ctx.getSource(), ConfigHandler.getClockBasedCommands(), page,
-                          "Clock-Based Schedulers", listingsPerPage);
-                      return 1;
-                    })))
+            .then(listPages(Types.CLOCKBASED.name, ConfigHandler.getRegistry().getSorted(Types.CLOCKBASED),
+                "Clock-Based Schedulers"))
 
             // Command to list all atboot schedulers
-            .then(literal(Types.ATBOOT.name)
-                .executes(ctx -> {
-                  Messages.sendListOfType(ctx.getSource(), ConfigHandler.getOnceAtBootCommands(), 1,
-                      "Run Once At Boot Schedulers", listingsPerPage);
-                  return 1;
-                })
-                .then(argument("page", IntegerArgumentType.integer(1))
-                    .executes(ctx -> {
-                      int page = IntegerArgumentType.getInteger(ctx, "page");
-                      Messages.sendListOfType(ctx.getSource(), ConfigHandler.getOnceAtBootCommands(), page,
-                          "Run Once At Boot Schedulers", listingsPerPage);
-                      return 1;
-                    }))))
+            .then(listPages(Types.ATBOOT.name, ConfigHandler.getRegistry().getSorted(Types.ATBOOT),
+                "Run Once At Boot Schedulers")))
 
         // Command for activating a scheduler
         .then(literal("activate")
             .then(argument("id", StringArgumentType.word())
-                .suggests((ctx, builder) -> {
-                  for (String id : ConfigHandler.getAllSchedulerIDs()) {
-                    Object cmd = ConfigHandler.getCommandById(id);
-                    if (cmd instanceof Scheduler info && !info.isActive()) {
-                      builder.suggest(id);
-                    }
-                  }
-                  return builder.buildFuture();
-                })
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.INACTIVE))
                 .executes(ctx -> {
                   String id = StringArgumentType.getString(ctx, "id");
-                  Boolean result = setCommandActiveState(id, true);
+                  Boolean result = ConfigHandler.setActiveState(id, true);
                   if (result == null) {
                     Messages.sendAlreadyActiveMessage(ctx, id);
                   } else if (result) {
@@ -304,18 +266,10 @@ public class Main implements ModInitializer {
         // Command for deactivating a scheduler
         .then(literal("deactivate")
             .then(argument("id", StringArgumentType.word())
-                .suggests((ctx, builder) -> {
-                  for (String id : ConfigHandler.getAllSchedulerIDs()) {
-                    Object cmd = ConfigHandler.getCommandById(id);
-                    if (cmd instanceof Scheduler info && info.isActive()) {
-                      builder.suggest(id);
-                    }
-                  }
-                  return builder.buildFuture();
-                })
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.ACTIVE))
                 .executes(ctx -> {
                   String id = StringArgumentType.getString(ctx, "id");
-                  Boolean result = setCommandActiveState(id, false);
+                  Boolean result = ConfigHandler.setActiveState(id, false);
                   if (result == null) {
                     Messages.sendAlreadyInactiveMessage(ctx, id);
                   } else if (result) {
@@ -329,12 +283,7 @@ public class Main implements ModInitializer {
         // Command to get details about a schedulers
         .then(literal("details")
             .then(argument("id", StringArgumentType.word())
-                .suggests((ctx, builder) -> {
-                  for (String id : ConfigHandler.getAllSchedulerIDs()) {
-                    builder.suggest(id);
-                  }
-                  return builder.buildFuture();
-                })
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.ALL))
                 .executes(ctx -> {
                   String id = StringArgumentType.getString(ctx, "id");
                   Object cmd = ConfigHandler.getCommandById(id);
@@ -352,12 +301,7 @@ public class Main implements ModInitializer {
         // Rename a scheduler
         .then(literal("rename")
             .then(argument("id", StringArgumentType.word())
-                .suggests((ctx, builder) -> {
-                  for (String id : ConfigHandler.getAllSchedulerIDs()) {
-                    builder.suggest(id);
-                  }
-                  return builder.buildFuture();
-                })
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.ALL))
                 .then(argument("new", StringArgumentType.word())
                     .executes(ctx -> {
                       String oldId = StringArgumentType.getString(ctx, "id");
@@ -388,12 +332,7 @@ public class Main implements ModInitializer {
         // Set a description for a scheduler
         .then(literal("description")
             .then(argument("id", StringArgumentType.word())
-                .suggests((ctx, builder) -> {
-                  for (String id : ConfigHandler.getAllSchedulerIDs()) {
-                    builder.suggest(id);
-                  }
-                  return builder.buildFuture();
-                })
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.ALL))
                 .then(argument("description", StringArgumentType.greedyString())
                     .executes(ctx -> {
                       String id = StringArgumentType.getString(ctx, "id");
@@ -419,13 +358,7 @@ public class Main implements ModInitializer {
                         return 0;
                       }
 
-                      if (cmd instanceof Interval) {
-                        ConfigHandler.saveIntervalCommands();
-                      } else if (cmd instanceof ClockBased) {
-                        ConfigHandler.saveClockBasedCommands();
-                      } else if (cmd instanceof AtBoot) {
-                        ConfigHandler.saveOnceAtBootCommands();
-                      }
+                      ConfigHandler.recordDescription((Scheduler) cmd);
                       Messages.sendUpdatedDescription(ctx, id);
                       return 1;
                     }))))
@@ -433,19 +366,14 @@ public class Main implements ModInitializer {
         // Command for removing a scheduler
         .then(literal("remove")
             .then(argument("id", StringArgumentType.word())
-                .suggests((ctx, builder) -> {
-                  for (String id : ConfigHandler.getAllSchedulerIDs()) {
-                    builder.suggest(id);
-                  }
-                  return builder.buildFuture();
-                })
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.ALL))
                 .executes(ctx -> {
                   ServerCommandSource source = ctx.getSource();
                   String id = StringArgumentType.getString(ctx, "id");
 
                   // If run from console (no player), just delete immediately
                   if (source.getEntity() == null) {
-                    boolean success = ConfigHandler.removeCommandById(id);
+                    boolean success = removeScheduler(id);
                     if (success) {
                       Messages.sendRemovedMessage(source, id);
                     } else {
@@ -464,7 +392,7 @@ public class Main implements ModInitializer {
                   if (pending != null && pending.id.equals(id)
                       && now - pending.timestamp < (removalTimeSeconds * 1000)) {
 
-                    boolean success = ConfigHandler.removeCommandById(id);
+                    boolean success = removeScheduler(id);
                     if (success) {
                       Messages.sendRemovedMessage(source, id);
                     } else {
@@ -512,7 +440,7 @@ public class Main implements ModInitializer {
 
                           AtBoot cmd = new AtBoot(id, command);
                           ConfigHandler.addOnceAtBootCommand(cmd);
-                          ConfigHandler.saveOnceAtBootCommands();
+                          ConfigHandler.recordCreated(cmd);
 
                           Messages.sendCreatedMessage(ctx, "at-boot", id);
                           return 1;
@@ -560,7 +488,7 @@ public class Main implements ModInitializer {
                                                 // NEW - wrap commands into a group
                                                 Interval newCmd = new Interval(id, List.of(commands), interval, unit, true, isRandom);
                                                 ConfigHandler.addIntervalCommand(newCmd);
-                                                ConfigHandler.saveIntervalCommands();
+                                                ConfigHandler.recordCreated(newCmd);
                                             } catch (IllegalArgumentException e) {
                                                 ctx.getSource().sendError(
                                                         Text.literal("✖ Error: " + e.getMessage())
@@ -597,7 +525,7 @@ public class Main implements ModInitializer {
 
                           ClockBased newCmd = new ClockBased(id, command);
                           ConfigHandler.addClockBasedCommand(newCmd);
-                          ConfigHandler.saveClockBasedCommands();
+                          ConfigHandler.recordCreated(newCmd);
 
                           Messages.sendCreatedMessage(ctx, "clock-based", id);
                           return 1;
@@ -606,12 +534,7 @@ public class Main implements ModInitializer {
         // Command to add a new time point for a clock-based scheduler
         .then(literal("addtime")
             .then(argument("id", StringArgumentType.word())
-                .suggests((ctx, builder) -> {
-                  for (String id : ConfigHandler.getClockBasedSchedulerIDs()) {
-                    builder.suggest(id);
-                  }
-                  return builder.buildFuture();
-                })
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.CLOCK_BASED))
                 .then(argument("time", StringArgumentType.word())
                     .suggests((context, builder) -> {
                       builder.suggest("00.00");
@@ -653,8 +576,9 @@ public class Main implements ModInitializer {
                                 .styled(s -> s.withColor(Formatting.RED)));
                         return 0;
                       }
+                      ConfigHandler.getClockIndex().add(cc, hour, minute);
 
-                      ConfigHandler.saveClockBasedCommands();
+                      ConfigHandler.recordTimeAdded(cc, hour, minute);
                       Messages.sendAddedTimeMessage(ctx, timeArg, id);
 
                       return 1;
@@ -663,12 +587,7 @@ public class Main implements ModInitializer {
         // Command to remove a time point for a clock-based scheduler
         .then(literal("removetime")
             .then(argument("id", StringArgumentType.word())
-                .suggests((ctx, builder) -> {
-                  for (String id : ConfigHandler.getClockBasedSchedulerIDs()) {
-                    builder.suggest(id);
-                  }
-                  return builder.buildFuture();
-                })
+                .suggests((ctx, builder) -> suggestIds(builder, IdTrie.CLOCK_BASED))
                 .then(argument("time", StringArgumentType.word())
                     .suggests((context, builder) -> {
                       if (context.getNodes().size() > 1) {
@@ -731,8 +650,9 @@ public class Main implements ModInitializer {
                                 .styled(s -> s.withColor(Formatting.RED)));
                         return 0;
                       }
+                      ConfigHandler.getClockIndex().remove(cc, hour, minute);
 
-                      ConfigHandler.saveClockBasedCommands();
+                      ConfigHandler.recordTimeRemoved(cc, hour, minute);
                       Messages.sendRemovedTimeMessage(ctx, timeStr, id);
 
                       return 1;
@@ -741,38 +661,80 @@ public class Main implements ModInitializer {
     )));
   }
 
-  private static Boolean setCommandActiveState(String id, boolean active) {
-    for (Interval cmd : ConfigHandler.getIntervalCommands()) {
-      if (cmd.getID().equals(id)) {
-        if (cmd.isActive() == active)
-          return null; // Already in desired state
-        cmd.setActive(active);
-        ConfigHandler.saveIntervalCommands();
-        return true;
-      }
-    }
+  /**
+   * A list subcommand with an optional page number. Only the requested page
+   * of the view is rendered.
+   */
+  private static LiteralArgumentBuilder<ServerCommandSource> listPages(String name, SortedView view, String title) {
+    return literal(name)
+        .executes(ctx -> {
+          Messages.sendListPage(ctx.getSource(), view, 1, title, listingsPerPage);
+          return 1;
+        })
+        .then(argument("page", IntegerArgumentType.integer(1))
+            .executes(ctx -> {
+              int page = IntegerArgumentType.getInteger(ctx, "page");
+              Messages.sendListPage(ctx.getSource(), view, page, title, listingsPerPage);
+              return 1;
+            }));
+  }
 
-    for (ClockBased cmd : ConfigHandler.getClockBasedCommands()) {
-      if (cmd.getID().equals(id)) {
-        if (cmd.isActive() == active)
-          return null;
-        cmd.setActive(active);
-        ConfigHandler.saveClockBasedCommands();
-        return true;
-      }
-    }
+  /**
+   * list active and list inactive, with a section for every type. The page
+   * number pages through each section at once.
+   */
+  private static LiteralArgumentBuilder<ServerCommandSource> listSections(String name, boolean active) {
+    return literal(name)
+        .executes(ctx -> {
+          sendSections(ctx.getSource(), active, 1);
+          return 1;
+        })
+        .then(argument("page", IntegerArgumentType.integer(1))
+            .executes(ctx -> {
+              sendSections(ctx.getSource(), active, IntegerArgumentType.getInteger(ctx, "page"));
+              return 1;
+            }));
+  }
 
-    for (AtBoot cmd : ConfigHandler.getOnceAtBootCommands()) {
-      if (cmd.getID().equals(id)) {
-        if (cmd.isActive() == active)
-          return null;
-        cmd.setActive(active);
-        ConfigHandler.saveOnceAtBootCommands();
-        return true;
-      }
+  private static void sendSections(ServerCommandSource source, boolean active, int page) {
+    SchedulerRegistry registry = ConfigHandler.getRegistry();
+    String state = active ? "Active" : "Inactive";
+    Messages.sendListPage(source, registry.getSorted(Types.INTERVAL, active), page,
+        state + " Interval Commands", listingsPerPage);
+    Messages.sendListPage(source, registry.getSorted(Types.CLOCKBASED, active), page,
+        state + " Clock-Based Commands", listingsPerPage);
+    Messages.sendListPage(source, registry.getSorted(Types.ATBOOT, active), page,
+        state + " Run Once Commands", listingsPerPage);
+  }
+
+  /**
+   * Shows the schedulers that take the most time, by total time or by p99.
+   */
+  private static int sendStatsTop(ServerCommandSource source, boolean byP99) {
+    SchedulerMetrics metrics = ConfigHandler.getMetrics();
+    var order = byP99 ? SchedulerMetrics.BY_P99 : SchedulerMetrics.BY_TOTAL_TIME;
+    Messages.sendStatsTop(source, metrics.top(order, statsTopCount), byP99 ? "p99" : "total time");
+    return 1;
+  }
+
+  /**
+   * Suggests only the IDs that start with what was typed so far, so large
+   * servers don't send every ID on every key press.
+   */
+  private static CompletableFuture<Suggestions> suggestIds(SuggestionsBuilder builder, int view) {
+    IdTrie ids = ConfigHandler.getRegistry().getIdTrie();
+    for (String id : ids.find(builder.getRemaining(), view, ConfigHandler.getSettings().getSuggestionLimit())) {
+      builder.suggest(id);
     }
+    return builder.buildFuture();
+  }
 
-    return false; // Not found
+  private boolean removeScheduler(String id) {
+    Scheduler scheduler = ConfigHandler.getCommandById(id);
+    if (scheduler != null) {
+      parseCache.invalidate(scheduler.getAllCommands());
+    }
+    return ConfigHandler.removeCommandById(id);
   }
 
   private static class PendingRemoval {
@@ -1,7 +1,8 @@
 package net.william.commandscheduler;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import com.mojang.brigadier.context.CommandContext;
 
@@ -119,7 +120,7 @@ public class Messages {
 			output.append(Text.literal(" - Interval: ")
 					.styled(s -> s.withBold(true).withColor(Formatting.GRAY)))
 					.append(Text.literal(ic.getInterval() + " " + ic.getUnit().name().toLowerCase()
-							+ "\n"));
+							+ (ic.isWallClock() ? " (real time)" : "") + "\n"));
 
 			output.append(Text.literal(" - Command: ")
 					.styled(s -> s.withBold(true).withColor(Formatting.GRAY)))
@@ -153,6 +154,9 @@ public class Messages {
 			}
 			output.append(Text.literal("\n"));
 
+			output.append(label("Missed runs"))
+					.append(Text.literal(cc.getMisfirePolicy().name().toLowerCase() + "\n"));
+
 			output.append(Text.literal(" - Command: ")
 					.styled(s -> s.withBold(true).withColor(Formatting.GRAY)))
 					.append(Text.literal(cc.getCommand()).styled(s -> s.withItalic(true)))
@@ -186,6 +190,23 @@ public class Messages {
 						.append(Text.literal("\n"));
 			}
 		}
+
+		if (cmd instanceof Scheduler scheduler) {
+			output.append(label("Output")).append(Text.literal(scheduler.getOutput().name().toLowerCase() + "\n"));
+			output.append(label("Log")).append(Text.literal(scheduler.getLogPolicy().name().toLowerCase() + "\n"));
+
+			String captured = scheduler.getCapturedOutput();
+			if (captured != null) {
+				long ago = (System.currentTimeMillis() - scheduler.getCapturedMillis()) / 1000;
+				output.append(label("Last result"))
+						.append(Text.literal(scheduler.getCapturedResult() + " (" + ago + " seconds ago)\n"));
+				if (!captured.isEmpty()) {
+					output.append(label("Last output"))
+							.append(Text.literal(captured).styled(s -> s.withItalic(true)))
+							.append(Text.literal("\n"));
+				}
+			}
+		}
 		ctx.getSource().sendFeedback(() -> output, false);
 	}
 
@@ -374,6 +395,15 @@ public class Messages {
 		source.sendFeedback(() -> Messages.styledCommand("reload"),
 				false);
 
+		source.sendFeedback(() -> Messages.styledCommand("status"),
+				false);
+
+		source.sendFeedback(() -> Messages.styledCommand("stats ")
+				.append(Messages.arg("[id|top]")), false);
+
+		source.sendFeedback(() -> Messages.styledCommand("profile"),
+				false);
+
 		source.sendFeedback(() -> Text.literal("For commands on creating new schedulers, go to page 2")
 				.styled(s -> s.withColor(Formatting.DARK_GRAY)),
 				false);
@@ -411,9 +441,11 @@ public class Messages {
 				.styled(s -> s.withColor(Formatting.GOLD).withBold(true)),
 				false);
 
-		source.sendFeedback(() -> Messages.styledCommand("list active"), false);
+		source.sendFeedback(() -> Messages.styledCommand("list active ")
+				.append(Messages.arg("[page]", Formatting.GRAY)), false);
 
-		source.sendFeedback(() -> Messages.styledCommand("list inactive"), false);
+		source.sendFeedback(() -> Messages.styledCommand("list inactive ")
+				.append(Messages.arg("[page]", Formatting.GRAY)), false);
 
 		source.sendFeedback(() -> Messages.styledCommand("list atboot ")
 				.append(Messages.arg("[page]", Formatting.GRAY)), false);
@@ -472,46 +504,40 @@ public class Messages {
 
 	}
 
-	public static <T extends Scheduler> void sendList(ServerCommandSource source,
-			List<T> list, Boolean activeOnly) {
-
-		List<T> filtered = new ArrayList<>();
-		for (T cmd : list) {
-			if (activeOnly == null || cmd.isActive() == activeOnly) {
-				filtered.add(cmd);
-			}
-		}
-
-		if (filtered.isEmpty()) {
-			String msg = activeOnly == null ? "§8(no schedulers found)"
-					: activeOnly ? "§8(no active schedulers found)"
-							: "§8(no inactive schedulers found)";
-			source.sendFeedback(() -> Text.literal(msg), false);
-			return;
-		}
+	// Rendered list lines, reused until the scheduler's ID or state changes
+	private static final Map<Scheduler, ListLine> listLines = new WeakHashMap<>();
 
-		for (int i = 0; i < Math.min(4, filtered.size()); i++) {
-			T cmd = filtered.get(i);
-			String id = cmd.getID();
-			boolean isActive = cmd.isActive();
+	private static final class ListLine {
+		final String id;
+		final boolean active;
+		final Text text;
 
-			source.sendFeedback(() -> Text.literal(" - ")
+		ListLine(String id, boolean active) {
+			this.id = id;
+			this.active = active;
+			this.text = Text.literal(" - ")
 					.append(Text.literal(id).styled(s -> s.withColor(Formatting.YELLOW)))
-					.append(Text.literal(" (" + (isActive ? "active" : "inactive") + ")")
-							.styled(s -> s.withColor(Formatting.GRAY))),
-					false);
+					.append(Text.literal(" (" + (active ? "active" : "inactive") + ")")
+							.styled(s -> s.withColor(Formatting.GRAY)));
 		}
+	}
 
-		if (filtered.size() > 4) {
-			int more = filtered.size() - 4;
-			source.sendFeedback(() -> Text.literal("and " + more + " more...")
-					.styled(s -> s.withColor(Formatting.DARK_GRAY).withItalic(true)), false);
+	private static Text listLine(Scheduler cmd) {
+		ListLine line = listLines.get(cmd);
+		if (line == null || !line.id.equals(cmd.getID()) || line.active != cmd.isActive()) {
+			line = new ListLine(cmd.getID(), cmd.isActive());
+			listLines.put(cmd, line);
 		}
+		return line.text;
 	}
 
-	public static <T extends Scheduler> void sendListOfType(ServerCommandSource source, List<T> fullList, int page,
+	/**
+	 * Sends one page of a sorted view. Only the schedulers on that page are
+	 * looked at, and their lines come from the cache when nothing changed.
+	 */
+	public static void sendListPage(ServerCommandSource source, SortedView view, int page,
 			String title, int perPage) {
-		int total = fullList.size();
+		int total = view.size();
 
 		// If the list is empty, show "no schedulers found" message and return
 		if (total == 0) {
@@ -520,7 +546,7 @@ public class Messages {
 			return;
 		}
 
-		int maxPages = (int) Math.ceil((double) total / perPage);
+		int maxPages = view.pageCount(perPage);
 		if (page < 1 || page > maxPages) {
 			source.sendFeedback(() -> Text.literal("§6[" + title + " Page " + page + "/" + maxPages + "]"), false);
 			source.sendFeedback(() -> Text.literal("This page doesn't exist."), false);
@@ -529,24 +555,134 @@ public class Messages {
 
 		source.sendFeedback(() -> Text.literal("\n§6[" + title + " Page " + page + "/" + maxPages + "]"), false);
 
-		int start = (page - 1) * perPage;
-		int end = Math.min(start + perPage, total);
+		for (Scheduler cmd : view.page(page, perPage)) {
+			Text line = listLine(cmd);
+			source.sendFeedback(() -> line, false);
+		}
+	}
 
-		for (int i = start; i < end; i++) {
-			T cmd = fullList.get(i);
-			String id = cmd.getID();
-			boolean isActive = cmd.isActive();
+	public static void sendStatus(ServerCommandSource source, DispatchQueue queue, ParseCache parseCache,
+			Settings settings) {
+		int maxCommands = settings.getMaxCommandsPerTick();
+		long budgetMicros = settings.getTickBudgetNanos() / 1000;
 
-			source.sendFeedback(() -> Text.literal(" - ")
-					.append(Text.literal(id).styled(s -> s.withColor(Formatting.YELLOW)))
-					.append(Text.literal(" (" + (isActive ? "active" : "inactive") + ")")
-							.styled(s -> s.withColor(Formatting.GRAY))),
-					false);
+		MutableText output = Text.literal("")
+				.append(Text.literal("\n[CommandScheduler Status]")
+						.styled(s -> s.withColor(Formatting.GOLD).withBold(true)))
+				.append("\n");
+
+		output.append(label("Budget per tick"))
+				.append(Text.literal((maxCommands == 0 ? "unlimited" : maxCommands) + " commands, "
+						+ (budgetMicros == 0 ? "unlimited" : budgetMicros + " µs") + "\n"));
+
+		output.append(label("Queue depth"))
+				.append(Text.literal(queue.getDepth() + "/" + queue.getCapacity()
+						+ " (peak " + queue.getPeakDepth() + ")\n"));
+
+		output.append(label("Deferred"))
+				.append(Text.literal(queue.getDeferredTotal() + " commands, "
+						+ queue.getOverflowTotal() + " ran over budget because the queue was full\n"));
+
+		output.append(label("When full"))
+				.append(Text.literal("the oldest queued command runs over budget, order is kept\n"));
+
+		output.append(label("Deferral latency"))
+				.append(Text.literal(String.format("avg %.1f ticks, max %d ticks, oldest waiting %d ticks\n",
+						queue.getAverageDelayTicks(), queue.getMaxDelayTicks(), queue.getOldestWaitTicks())));
+
+		output.append(label("Parse cache"))
+				.append(Text.literal(String.format("%d entries, %d hits, %d misses (%.1f%% hit rate), %d invalidated",
+						parseCache.size(), parseCache.getHits(), parseCache.getMisses(),
+						parseCache.getHitRate() * 100, parseCache.getInvalidations())));
+
+		source.sendFeedback(() -> output, false);
+	}
+
+	public static void sendStatsTop(ServerCommandSource source, List<Map.Entry<String, SchedulerStats>> top,
+			String order) {
+		MutableText output = Text.literal("")
+				.append(Text.literal("\n[CommandScheduler Stats by " + order + "]")
+						.styled(s -> s.withColor(Formatting.GOLD).withBold(true)))
+				.append("\n");
+
+		if (top.isEmpty()) {
+			output.append(Text.literal("No scheduled commands have run yet.")
+					.styled(s -> s.withColor(Formatting.GRAY)));
+		}
+		for (Map.Entry<String, SchedulerStats> entry : top) {
+			SchedulerStats stats = entry.getValue();
+			output.append(Text.literal(" - ").styled(s -> s.withColor(Formatting.GRAY)))
+					.append(Text.literal(entry.getKey()).styled(s -> s.withColor(Formatting.YELLOW)))
+					.append(Text.literal(String.format(": %d runs, %s total, p99 %s", stats.getRuns(),
+							formatNanos(stats.getTotalNanos()), formatNanos(stats.percentileNanos(0.99)))))
+					.append(Text.literal(stats.getFailures() > 0 ? ", " + stats.getFailures() + " failed" : "")
+							.styled(s -> s.withColor(Formatting.RED)))
+					.append("\n");
 		}
+		source.sendFeedback(() -> output, false);
 	}
 
-	public static void sendListHeader(ServerCommandSource source, String title) {
-		source.sendFeedback(() -> Text.literal("\n§6[" + title + "]"), false);
+	public static void sendSchedulerStats(ServerCommandSource source, String id, SchedulerStats stats) {
+		MutableText output = Text.literal("")
+				.append(Text.literal("\n[Stats for " + id + "]")
+						.styled(s -> s.withColor(Formatting.GOLD).withBold(true)))
+				.append("\n");
+
+		if (stats == null) {
+			output.append(Text.literal("Hasn't run since the server started.")
+					.styled(s -> s.withColor(Formatting.GRAY)));
+			source.sendFeedback(() -> output, false);
+			return;
+		}
+
+		output.append(label("Runs"))
+				.append(Text.literal(stats.getRuns() + " (" + stats.getFailures() + " failed)\n"));
+
+		long ago = (System.currentTimeMillis() - stats.getLastRunMillis()) / 1000;
+		output.append(label("Last run")).append(Text.literal(ago + " seconds ago\n"));
+
+		output.append(label("Total time")).append(Text.literal(formatNanos(stats.getTotalNanos()) + "\n"));
+
+		output.append(label("Per run"))
+				.append(Text.literal(String.format("avg %s, p50 %s, p90 %s, p99 %s, max %s",
+						formatNanos(stats.getAverageNanos()), formatNanos(stats.percentileNanos(0.5)),
+						formatNanos(stats.percentileNanos(0.9)), formatNanos(stats.percentileNanos(0.99)),
+						formatNanos(stats.getMaxNanos()))));
+
+		source.sendFeedback(() -> output, false);
+	}
+
+	private static String formatNanos(long nanos) {
+		if (nanos < 1_000_000) {
+			return (nanos / 1000) + " µs";
+		}
+		if (nanos < 10_000_000_000L) {
+			return String.format("%.1f ms", nanos / 1e6);
+		}
+		return String.format("%.1f s", nanos / 1e9);
+	}
+
+	public static void sendProfile(ServerCommandSource source, TickProfiler profiler, Settings settings) {
+		long warningMicros = settings.getTickWarningNanos() / 1000;
+
+		MutableText output = Text.literal("")
+				.append(Text.literal("\n[CommandScheduler Tick Profile]")
+						.styled(s -> s.withColor(Formatting.GOLD).withBold(true)))
+				.append("\n");
+
+		output.append(label("Window"))
+				.append(Text.literal(profiler.getSampleCount() + " ticks, warning above "
+						+ (warningMicros == 0 ? "never" : warningMicros + " µs") + "\n"));
+
+		for (int phase = 0; phase <= TickProfiler.TOTAL; phase++) {
+			output.append(label(TickProfiler.nameOf(phase)))
+					.append(Text.literal(String.format("avg %s, p50 %s, p99 %s, max %s\n",
+							formatNanos(profiler.averageNanos(phase)), formatNanos(profiler.percentileNanos(phase, 0.5)),
+							formatNanos(profiler.percentileNanos(phase, 0.99)),
+							formatNanos(profiler.percentileNanos(phase, 1)))));
+		}
+
+		source.sendFeedback(() -> output, false);
 	}
 
 }
@@ -0,0 +1,306 @@
+package net.william.commandscheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the mod's metrics as OpenMetrics text at /metrics, for Prometheus
+ * to scrape. Runs on the JDK's built-in HTTP server and is off by default.
+ *
+ * Once a second the server thread copies what is exported into an immutable
+ * snapshot and publishes it through a volatile field, but only if the last
+ * one was scraped. Scrapes are answered on the exporter's own thread from the
+ * latest snapshot, so they never wait on the server thread or lock anything
+ * it uses. The first scrape after a pause gets the snapshot taken after the
+ * one before it. Percentiles are worked out from the copied samples on that
+ * thread as well.
+ */
+public class MetricsExporter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+  private static final int PUBLISH_TICKS = TimeUnit.TICKS_PER_SECOND;
+  // Histogram buckets start at 2^10 ns (about 1 µs), faster runs fall in the first one.
+  // SchedulerStats bucket b holds durations strictly below 2^b ns, so its le is 2^b.
+  private static final int FIRST_BUCKET = 10;
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+  // Only touched by the server thread
+  private HttpServer server;
+  private ExecutorService executor;
+  private Settings appliedSettings;
+  private int ticksUntilPublish = 0;
+
+  private volatile Snapshot snapshot;
+  // Set by scrapes, cleared when the next snapshot is taken
+  private volatile boolean scraped;
+
+  /**
+   * Called every tick. Starts, moves or stops the endpoint when the settings
+   * were reloaded, and publishes a new snapshot once a second while it runs.
+   */
+  public void tick(SchedulingEngine engine) {
+    Settings settings = ConfigHandler.getSettings();
+    if (settings != appliedSettings) {
+      apply(settings);
+    }
+    if (server == null || --ticksUntilPublish > 0) {
+      return;
+    }
+    ticksUntilPublish = PUBLISH_TICKS;
+    if (!scraped && snapshot != null) {
+      return;
+    }
+    scraped = false;
+    snapshot = new Snapshot(engine);
+  }
+
+  private void apply(Settings settings) {
+    Settings previous = appliedSettings;
+    appliedSettings = settings;
+    if (server != null && settings.isMetricsExporter()
+        && settings.getMetricsAddress().equals(previous.getMetricsAddress())
+        && settings.getMetricsPort() == previous.getMetricsPort()) {
+      return;
+    }
+
+    stopServer();
+    if (!settings.isMetricsExporter()) {
+      return;
+    }
+    try {
+      HttpServer http = HttpServer.create(
+          new InetSocketAddress(settings.getMetricsAddress(), settings.getMetricsPort()), 0);
+      http.createContext("/metrics", this::handle);
+      executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CommandScheduler-Metrics");
+        thread.setDaemon(true);
+        return thread;
+      });
+      http.setExecutor(executor);
+      http.start();
+      server = http;
+      ticksUntilPublish = 0;
+      LOGGER.info("Serving metrics at http://{}:{}/metrics", settings.getMetricsAddress(),
+          settings.getMetricsPort());
+    } catch (IOException | IllegalArgumentException e) {
+      LOGGER.error("Failed to start the metrics exporter: {}", e.getMessage());
+      stopServer();
+    }
+  }
+
+  /**
+   * Closes the endpoint, it is opened again by the next tick if enabled.
+   */
+  public void stop() {
+    stopServer();
+    appliedSettings = null;
+  }
+
+  private void stopServer() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    snapshot = null;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      Snapshot current = snapshot;
+      scraped = true;
+      byte[] body = (current == null ? "# EOF\n" : current.render()).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Everything a scrape reports, copied on the server thread.
+   */
+  static final class Snapshot {
+
+    // By type, then inactive and active
+    private final int[][] schedulers = new int[Types.values().length][2];
+
+    private final String[] ids;
+    private final long[] runs;
+    private final long[] failures;
+    private final long[] buckets = new long[SchedulerStats.BUCKETS];
+    private long runsTotal;
+    private long nanosTotal;
+
+    private final int queueDepth;
+    private final long deferred;
+    private final long overflow;
+
+    private final long[][] tickSamples = new long[TickProfiler.TOTAL + 1][];
+    private final long[] tickNanos = new long[TickProfiler.TOTAL + 1];
+    private final long ticks;
+
+    private final long saves;
+    private final long saveNanos;
+    private final long failedSaves;
+
+    Snapshot(SchedulingEngine engine) {
+      SchedulerRegistry registry = ConfigHandler.getRegistry();
+      for (Types type : Types.values()) {
+        schedulers[type.ordinal()][0] = registry.getSorted(type, false).size();
+        schedulers[type.ordinal()][1] = registry.getSorted(type, true).size();
+      }
+
+      Map<String, SchedulerStats> stats = ConfigHandler.getMetrics().asMap();
+      ids = new String[stats.size()];
+      runs = new long[ids.length];
+      failures = new long[ids.length];
+      int i = 0;
+      for (Map.Entry<String, SchedulerStats> entry : stats.entrySet()) {
+        SchedulerStats s = entry.getValue();
+        ids[i] = entry.getKey();
+        runs[i] = s.getRuns();
+        failures[i] = s.getFailures();
+        s.addBucketsTo(buckets);
+        runsTotal += s.getRuns();
+        nanosTotal += s.getTotalNanos();
+        i++;
+      }
+
+      DispatchQueue queue = engine.getDispatchQueue();
+      queueDepth = queue.getDepth();
+      deferred = queue.getDeferredTotal();
+      overflow = queue.getOverflowTotal();
+
+      TickProfiler profiler = engine.getProfiler();
+      for (int phase = 0; phase <= TickProfiler.TOTAL; phase++) {
+        tickSamples[phase] = profiler.copySamples(phase);
+        tickNanos[phase] = profiler.getTotalNanos(phase);
+      }
+      ticks = profiler.getTicks();
+
+      ConfigPersister persister = ConfigHandler.getPersister();
+      saves = persister.getSaves();
+      saveNanos = persister.getSaveNanos();
+      failedSaves = persister.getFailedSaves();
+    }
+
+    String render() {
+      StringBuilder out = new StringBuilder(256 + ids.length * 120);
+
+      family(out, "commandscheduler_schedulers", "gauge", "Configured schedulers by type and state.");
+      for (Types type : Types.values()) {
+        for (int active = 0; active < 2; active++) {
+          out.append("commandscheduler_schedulers{type=\"").append(type.name).append("\",active=\"")
+              .append(active == 1).append("\"} ").append(schedulers[type.ordinal()][active]).append('\n');
+        }
+      }
+
+      family(out, "commandscheduler_executions", "counter", "Commands run, by scheduler.");
+      for (int i = 0; i < ids.length; i++) {
+        perScheduler(out, "commandscheduler_executions_total", ids[i], runs[i]);
+      }
+      family(out, "commandscheduler_failures", "counter", "Commands that failed or threw, by scheduler.");
+      for (int i = 0; i < ids.length; i++) {
+        perScheduler(out, "commandscheduler_failures_total", ids[i], failures[i]);
+      }
+
+      family(out, "commandscheduler_dispatch_duration_seconds", "histogram",
+          "Time it took to dispatch a scheduled command, over all schedulers.");
+      long cumulative = 0;
+      for (int b = 0; b < SchedulerStats.BUCKETS - 1; b++) {
+        cumulative += buckets[b];
+        if (b >= FIRST_BUCKET) {
+          out.append("commandscheduler_dispatch_duration_seconds_bucket{le=\"").append((1L << b) / 1e9)
+              .append("\"} ").append(cumulative).append('\n');
+        }
+      }
+      out.append("commandscheduler_dispatch_duration_seconds_bucket{le=\"+Inf\"} ").append(runsTotal).append('\n');
+      out.append("commandscheduler_dispatch_duration_seconds_count ").append(runsTotal).append('\n');
+      out.append("commandscheduler_dispatch_duration_seconds_sum ").append(nanosTotal / 1e9).append('\n');
+
+      family(out, "commandscheduler_dispatch_queue_depth", "gauge", "Commands waiting for a later tick.");
+      out.append("commandscheduler_dispatch_queue_depth ").append(queueDepth).append('\n');
+      family(out, "commandscheduler_dispatch_deferred", "counter", "Commands moved to a later tick.");
+      out.append("commandscheduler_dispatch_deferred_total ").append(deferred).append('\n');
+      family(out, "commandscheduler_dispatch_overflow", "counter", "Queued commands run over budget because the queue was full.");
+      out.append("commandscheduler_dispatch_overflow_total ").append(overflow).append('\n');
+
+      family(out, "commandscheduler_tick_duration_seconds", "summary",
+          "Time the mod took of a server tick by phase, quantiles over the last minute.");
+      for (int phase = 0; phase <= TickProfiler.TOTAL; phase++) {
+        String label = "phase=\"" + TickProfiler.nameOf(phase).toLowerCase().replace(' ', '_').replace('-', '_')
+            + "\"";
+        long[] sorted = tickSamples[phase];
+        Arrays.sort(sorted);
+        for (double quantile : QUANTILES) {
+          out.append("commandscheduler_tick_duration_seconds{").append(label).append(",quantile=\"").append(quantile)
+              .append("\"} ").append(percentile(sorted, quantile) / 1e9).append('\n');
+        }
+        out.append("commandscheduler_tick_duration_seconds_count{").append(label).append("} ").append(ticks)
+            .append('\n');
+        out.append("commandscheduler_tick_duration_seconds_sum{").append(label).append("} ")
+            .append(tickNanos[phase] / 1e9).append('\n');
+      }
+
+      family(out, "commandscheduler_config_save_duration_seconds", "summary", "Config files written to disk.");
+      out.append("commandscheduler_config_save_duration_seconds_count ").append(saves).append('\n');
+      out.append("commandscheduler_config_save_duration_seconds_sum ").append(saveNanos / 1e9).append('\n');
+      family(out, "commandscheduler_config_save_failures", "counter", "Config files that couldn't be written.");
+      out.append("commandscheduler_config_save_failures_total ").append(failedSaves).append('\n');
+
+      return out.append("# EOF\n").toString();
+    }
+
+    private static void family(StringBuilder out, String name, String type, String help) {
+      out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+      out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    private static void perScheduler(StringBuilder out, String name, String id, long value) {
+      out.append(name).append("{scheduler=\"");
+      for (int i = 0; i < id.length(); i++) {
+        char c = id.charAt(i);
+        switch (c) {
+          case '\\' -> out.append("\\\\");
+          case '"' -> out.append("\\\"");
+          case '\n' -> out.append("\\n");
+          default -> out.append(c);
+        }
+      }
+      out.append("\"} ").append(value).append('\n');
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int rank = (int) Math.ceil(fraction * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package net.william.commandscheduler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What a clock-based scheduler does with runs it missed because the server
+ * didn't tick in their minute, after a long pause or stall.
+ */
+public enum Misfire {
+    SKIP, // Log the missed runs and carry on
+    ONCE, // Run once, however many runs were missed
+    ALL;  // Run once for every missed run, up to maxMissedRuns
+
+    public static Misfire fromString(String input) throws IllegalArgumentException {
+        for (Misfire misfire : Misfire.values()) {
+            if (misfire.name().equalsIgnoreCase(input)) {
+                return misfire;
+            }
+        }
+        throw new IllegalArgumentException("Invalid misfire policy: " + input);
+    }
+
+    public static List<String> getAllNames() {
+        return Arrays.stream(values())
+                .map(Misfire::name)
+                .map(String::toLowerCase)
+                .toList();
+    }
+}
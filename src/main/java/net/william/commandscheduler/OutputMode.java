@@ -0,0 +1,29 @@
+package net.william.commandscheduler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Where the feedback of a scheduler's commands goes.
+ */
+public enum OutputMode {
+    BROADCAST, // To the console and to ops, like a command run by the server
+    SILENT,    // Nowhere
+    CAPTURE;   // Kept in memory, the last run is shown by details
+
+    public static OutputMode fromString(String input) throws IllegalArgumentException {
+        for (OutputMode mode : OutputMode.values()) {
+            if (mode.name().equalsIgnoreCase(input)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Invalid output mode: " + input);
+    }
+
+    public static List<String> getAllNames() {
+        return Arrays.stream(values())
+                .map(OutputMode::name)
+                .map(String::toLowerCase)
+                .toList();
+    }
+}
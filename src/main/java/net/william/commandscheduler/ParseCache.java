@@ -0,0 +1,113 @@
+package net.william.commandscheduler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mojang.brigadier.ParseResults;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.CommandOutput;
+import net.minecraft.server.command.ServerCommandSource;
+
+/**
+ * Parsed commands by output mode and command string, so a scheduled command
+ * is only parsed by Brigadier the first time it runs. Parse results hold on
+ * to the command source, and with it where the feedback goes, so every mode
+ * has its own entries. The whole cache is dropped whenever the command tree
+ * may have changed (reload, datapack reload, server stop).
+ */
+public class ParseCache {
+
+  private final Map<String, ParseResults<ServerCommandSource>>[] entries = newMaps();
+  private final CaptureOutput capture;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long invalidations = 0;
+
+  public ParseCache(CaptureOutput capture) {
+    this.capture = capture;
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Map<String, ParseResults<ServerCommandSource>>[] newMaps() {
+    Map<String, ParseResults<ServerCommandSource>>[] maps = new Map[OutputMode.values().length];
+    for (int i = 0; i < maps.length; i++) {
+      maps[i] = new HashMap<>();
+    }
+    return maps;
+  }
+
+  public ParseResults<ServerCommandSource> get(MinecraftServer server, OutputMode mode, String command) {
+    Map<String, ParseResults<ServerCommandSource>> forMode = entries[mode.ordinal()];
+    ParseResults<ServerCommandSource> parsed = forMode.get(command);
+    if (parsed != null) {
+      hits++;
+      return parsed;
+    }
+
+    misses++;
+    parsed = server.getCommandManager().getDispatcher().parse(command, sourceFor(server, mode));
+    if (size() >= ConfigHandler.getSettings().getParseCacheSize()) {
+      clear();
+    }
+    forMode.put(command, parsed);
+    return parsed;
+  }
+
+  private ServerCommandSource sourceFor(MinecraftServer server, OutputMode mode) {
+    ServerCommandSource source = server.getCommandSource();
+    return switch (mode) {
+      case BROADCAST -> source;
+      case SILENT -> source.withOutput(CommandOutput.DUMMY);
+      case CAPTURE -> source.withOutput(capture);
+    };
+  }
+
+  public void invalidate(String command) {
+    for (Map<String, ParseResults<ServerCommandSource>> forMode : entries) {
+      if (forMode.remove(command) != null) {
+        invalidations++;
+      }
+    }
+  }
+
+  public void invalidate(List<String> commands) {
+    for (String command : commands) {
+      invalidate(command);
+    }
+  }
+
+  public void clear() {
+    for (Map<String, ParseResults<ServerCommandSource>> forMode : entries) {
+      invalidations += forMode.size();
+      forMode.clear();
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Map<String, ParseResults<ServerCommandSource>> forMode : entries) {
+      size += forMode.size();
+    }
+    return size;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public long getInvalidations() {
+    return invalidations;
+  }
+
+  public double getHitRate() {
+    long total = hits + misses;
+    return total == 0 ? 0 : (double) hits / total;
+  }
+}
@@ -0,0 +1,225 @@
+package net.william.commandscheduler;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes scheduled runs to the log following each scheduler's log policy,
+ * without any logging I/O on the server thread.
+ *
+ * The server thread only puts entries into a bounded SPSC queue. A daemon
+ * thread takes them out, formats them as key=value lines and hands them to
+ * the logger. When the queue is full, entries are dropped and counted rather
+ * than waited for, and the count is logged once there is room again.
+ *
+ * Sampled schedulers log every logSampleRate-th run. Aggregated schedulers
+ * are counted on the server thread, and the counts of a whole minute go into
+ * the queue as one entry when the next minute starts.
+ */
+public class RunLog {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  // How often the writer thread looks for new entries
+  private static final long POLL_NANOS = 50_000_000L;
+
+  private static final class Run {
+    final String id;
+    final String command;
+    final long nanos;
+    final boolean failed;
+    final int sampleRate;
+
+    Run(String id, String command, long nanos, boolean failed, int sampleRate) {
+      this.id = id;
+      this.command = command;
+      this.nanos = nanos;
+      this.failed = failed;
+      this.sampleRate = sampleRate;
+    }
+  }
+
+  private static final class Counts {
+    long runs;
+    long failures;
+    long totalNanos;
+    long maxNanos;
+  }
+
+  private static final class Minute {
+    final long startMillis;
+    final Map<String, Counts> counts;
+
+    Minute(long startMillis, Map<String, Counts> counts) {
+      this.startMillis = startMillis;
+      this.counts = counts;
+    }
+  }
+
+  private final EngineState state;
+
+  private SpscQueue<Object> queue;
+  private Thread writer;
+  private volatile boolean running = false;
+  // Only touched by whichever thread consumes the queue
+  private long reportedDrops = 0;
+  // Only written by the server thread
+  private volatile long dropped = 0;
+
+  private final Map<String, long[]> sampleCounters = new HashMap<>();
+  private Map<String, Counts> minute = new HashMap<>();
+  private long minuteStartMillis = -1;
+
+  public RunLog(EngineState state) {
+    this.state = state;
+  }
+
+  /**
+   * Called after every run on the server thread.
+   */
+  public void record(Scheduler owner, String command, long nanos, boolean failed) {
+    switch (owner.getLogPolicy()) {
+      case OFF -> {
+      }
+      case SAMPLED -> {
+        int rate = state.getSettings().getLogSampleRate();
+        long[] counter = sampleCounters.computeIfAbsent(owner.getID(), id -> new long[1]);
+        if (counter[0]++ % rate == 0) {
+          offer(new Run(owner.getID(), command, nanos, failed, rate));
+        }
+      }
+      case AGGREGATED -> {
+        Counts counts = minute.get(owner.getID());
+        if (counts == null) {
+          counts = new Counts();
+          minute.put(owner.getID(), counts);
+        }
+        counts.runs++;
+        if (failed) {
+          counts.failures++;
+        }
+        counts.totalNanos += nanos;
+        counts.maxNanos = Math.max(counts.maxNanos, nanos);
+      }
+      case FULL -> offer(new Run(owner.getID(), command, nanos, failed, 1));
+    }
+  }
+
+  /**
+   * Called every tick, hands over the counts of the last minute once a new
+   * one starts.
+   */
+  public void tick(long nowMillis) {
+    long start = nowMillis - nowMillis % 60_000;
+    if (start != minuteStartMillis) {
+      flush();
+      minuteStartMillis = start;
+      // Counters of removed schedulers would pile up otherwise
+      sampleCounters.keySet().removeIf(id -> state.getCommandById(id) == null);
+    }
+  }
+
+  /**
+   * Hands over the counts of the current minute right away.
+   */
+  public void flush() {
+    if (minute.isEmpty()) {
+      return;
+    }
+    offer(new Minute(minuteStartMillis, minute));
+    minute = new HashMap<>();
+  }
+
+  private void offer(Object entry) {
+    if (queue == null) {
+      start();
+    }
+    if (!queue.offer(entry)) {
+      dropped++;
+    }
+  }
+
+  /**
+   * Writes out everything that is queued, and the counts of the current
+   * minute, before returning, for when the server stops. The writer thread
+   * is stopped and the rest is written on the calling thread. The next entry
+   * starts a new writer.
+   */
+  public void close() {
+    flush();
+    if (writer == null) {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      // Without the writer stopped this thread can't take over the queue
+      Thread.currentThread().interrupt();
+      return;
+    }
+    writeQueued();
+    writer = null;
+    queue = null;
+  }
+
+  private void start() {
+    queue = new SpscQueue<>(state.getSettings().getLogQueueSize());
+    running = true;
+    writer = new Thread(this::drain, "CommandScheduler-Log");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private void drain() {
+    while (running) {
+      if (!writeQueued()) {
+        LockSupport.parkNanos(POLL_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Writes every queued entry and reports dropped ones. Returns false if
+   * nothing was queued.
+   */
+  private boolean writeQueued() {
+    boolean wrote = false;
+    Object entry;
+    while ((entry = queue.poll()) != null) {
+      if (entry instanceof Run run) {
+        write(run);
+      } else if (entry instanceof Minute counts) {
+        write(counts);
+      }
+      wrote = true;
+    }
+    long drops = dropped;
+    if (drops != reportedDrops) {
+      LOGGER.warn("Run log queue was full, {} entries were dropped", drops - reportedDrops);
+      reportedDrops = drops;
+    }
+    return wrote;
+  }
+
+  private static void write(Run run) {
+    LOGGER.info("Scheduled run scheduler={} command=\"{}\" status={} duration_us={}{}", run.id,
+        run.command.replace("\"", "\\\""), run.failed ? "failed" : "ok", run.nanos / 1000,
+        run.sampleRate > 1 ? " sample=1/" + run.sampleRate : "");
+  }
+
+  private static void write(Minute minute) {
+    for (Map.Entry<String, Counts> entry : minute.counts.entrySet()) {
+      Counts counts = entry.getValue();
+      LOGGER.info("Scheduled runs scheduler={} runs={} failed={} total_us={} max_us={} minute={}",
+          entry.getKey(), counts.runs, counts.failures, counts.totalNanos / 1000, counts.maxNanos / 1000,
+          Instant.ofEpochMilli(minute.startMillis));
+    }
+  }
+}
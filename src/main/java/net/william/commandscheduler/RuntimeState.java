@@ -0,0 +1,301 @@
+package net.william.commandscheduler;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Progress of every scheduler across restarts: how far each interval is into
+ * its period, and the minute a clock-based scheduler last ran in. Kept apart
+ * from the json5 files, which are only for what people edit.
+ *
+ * The file is memory-mapped and holds a fixed-size record per scheduler,
+ * keyed by a 64-bit hash of its ID. A checkpoint overwrites the records in
+ * place and never calls into the file system, the OS writes the pages back.
+ * The header holds the tick of the interval timer, so spread intervals keep
+ * their phase too.
+ *
+ * Only used on the server thread.
+ */
+public class RuntimeState {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  private static final int MAGIC = 0x43535354; // "CSST"
+  private static final int VERSION = 1;
+
+  // Header: magic, version, capacity, unused, timer tick, checkpoint time
+  private static final int HEADER = 32;
+  private static final int CAPACITY_AT = 8;
+  private static final int TICK_AT = 16;
+  private static final int MILLIS_AT = 24;
+
+  // Record: ID hash (0 for a free slot), type, flags, last run minute, progress
+  private static final int RECORD = 32;
+  private static final int TYPE_AT = 8;
+  private static final int FLAGS_AT = 9;
+  private static final int MINUTE_AT = 10;
+  private static final int PROGRESS_AT = 12;
+
+  private static final int HAS_RUN = 1;
+  private static final int MIN_CAPACITY = 1024;
+
+  private final Path path;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int capacity;
+  private final BitSet used = new BitSet();
+  private final Map<String, Integer> slots = new HashMap<>();
+  private long lastCheckpointNanos = System.nanoTime();
+
+  public RuntimeState(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * Stable 64-bit hash of an ID, never 0.
+   */
+  static long idHash(String id) {
+    long h = 0xcbf29ce484222325L; // FNV-1a
+    for (int i = 0; i < id.length(); i++) {
+      h ^= id.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h != 0 ? h : 1;
+  }
+
+  private boolean open() {
+    if (buffer != null) {
+      return true;
+    }
+    try {
+      Files.createDirectories(path.getParent());
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      long size = channel.size();
+      if (size >= HEADER) {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = buffer.getInt(CAPACITY_AT);
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && HEADER + (long) capacity * RECORD <= size) {
+          return true;
+        }
+        LOGGER.warn("Starting over with {}, it was written by another version", path.getFileName());
+      }
+      map(MIN_CAPACITY, true);
+      return true;
+    } catch (IOException e) {
+      LOGGER.error("Failed to open {}: {}", path.getFileName(), e.getMessage());
+      close();
+      return false;
+    }
+  }
+
+  private void map(int newCapacity, boolean fresh) throws IOException {
+    MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) newCapacity * RECORD);
+    if (fresh) {
+      for (int i = 0; i < HEADER + newCapacity * RECORD; i += 8) {
+        grown.putLong(i, 0);
+      }
+      grown.putInt(0, MAGIC);
+      grown.putInt(4, VERSION);
+    }
+    grown.putInt(CAPACITY_AT, newCapacity);
+    buffer = grown;
+    capacity = newCapacity;
+  }
+
+  public void close() {
+    if (buffer != null) {
+      buffer.force();
+    }
+    buffer = null;
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } catch (IOException e) {
+      LOGGER.error("Failed to close {}: {}", path.getFileName(), e.getMessage());
+    }
+    channel = null;
+  }
+
+  /**
+   * Gives every scheduler the progress it had at the last checkpoint and
+   * frees the records of schedulers that no longer exist. Returns the timer
+   * tick of that checkpoint.
+   */
+  public long restore(SchedulerRegistry registry, long nowMillis) {
+    if (!open()) {
+      return 0;
+    }
+
+    used.clear();
+    slots.clear();
+    Map<Long, Integer> byHash = new HashMap<>();
+    for (int slot = 0; slot < capacity; slot++) {
+      long hash = buffer.getLong(offset(slot));
+      Integer duplicate = hash != 0 ? byHash.put(hash, slot) : null;
+      if (duplicate != null) {
+        free(duplicate);
+      }
+    }
+
+    // The last run only matters while it is still the same minute
+    boolean sameMinute = nowMillis / 60_000 == buffer.getLong(MILLIS_AT) / 60_000;
+    int restored = 0;
+    restored += restore(registry.getIntervals(), byHash, sameMinute);
+    restored += restore(registry.getClockBased(), byHash, sameMinute);
+
+    for (int slot : byHash.values()) {
+      free(slot);
+    }
+    long savedTick = buffer.getLong(TICK_AT);
+    if (restored > 0) {
+      LOGGER.info("Restored the progress of {} schedulers", restored);
+    }
+    return savedTick;
+  }
+
+  private int restore(List<? extends Scheduler> schedulers, Map<Long, Integer> byHash, boolean sameMinute) {
+    int restored = 0;
+    for (Scheduler scheduler : schedulers) {
+      Integer slot = byHash.remove(idHash(scheduler.getID()));
+      if (slot == null) {
+        continue;
+      }
+      int at = offset(slot);
+      if (buffer.get(at + TYPE_AT) != scheduler.getType().ordinal() + 1) {
+        byHash.put(idHash(scheduler.getID()), slot); // freed below
+        continue;
+      }
+      used.set(slot);
+      slots.put(scheduler.getID(), slot);
+
+      if (scheduler instanceof Interval ic) {
+        ic.restoreProgress(buffer.getInt(at + PROGRESS_AT), (buffer.get(at + FLAGS_AT) & HAS_RUN) != 0);
+      } else if (scheduler instanceof ClockBased cc && sameMinute) {
+        int minute = buffer.getShort(at + MINUTE_AT);
+        if (minute >= 0) {
+          cc.restoreLastRun(minute / 60, minute % 60);
+        }
+      }
+      restored++;
+    }
+    return restored;
+  }
+
+  /**
+   * Writes a checkpoint once the checkpoint interval has passed, called every
+   * tick.
+   */
+  public void tick(IntervalTimer timer, SchedulerRegistry registry) {
+    long interval = ConfigHandler.getSettings().getStateCheckpointNanos();
+    long now = System.nanoTime();
+    if (interval > 0 && now - lastCheckpointNanos >= interval) {
+      checkpoint(timer, registry);
+    }
+  }
+
+  /**
+   * Overwrites the record of every interval and clock-based scheduler with
+   * its current progress.
+   */
+  public void checkpoint(IntervalTimer timer, SchedulerRegistry registry) {
+    lastCheckpointNanos = System.nanoTime();
+    if (!open()) {
+      return;
+    }
+
+    List<Interval> intervals = registry.getIntervals();
+    for (int i = 0; i < intervals.size(); i++) {
+      Interval ic = intervals.get(i);
+      int at = record(ic);
+      if (at < 0) {
+        return;
+      }
+      buffer.put(at + FLAGS_AT, (byte) (ic.hasRan() ? HAS_RUN : 0));
+      buffer.putInt(at + PROGRESS_AT, ConfigHandler.timerFor(ic).progressOf(ic));
+    }
+
+    List<ClockBased> clockBased = registry.getClockBased();
+    for (int i = 0; i < clockBased.size(); i++) {
+      ClockBased cc = clockBased.get(i);
+      int at = record(cc);
+      if (at < 0) {
+        return;
+      }
+      int hour = cc.getLastRunHour();
+      buffer.putShort(at + MINUTE_AT, (short) (hour >= 0 ? hour * 60 + cc.getLastRunMinute() : -1));
+    }
+
+    buffer.putLong(TICK_AT, timer.getCurrentTick());
+    buffer.putLong(MILLIS_AT, System.currentTimeMillis());
+  }
+
+  /**
+   * Offset of the record of a scheduler, taking a free one if it has none
+   * yet. -1 if the file couldn't grow.
+   */
+  private int record(Scheduler scheduler) {
+    Integer slot = slots.get(scheduler.getID());
+    if (slot != null) {
+      return offset(slot);
+    }
+
+    int free = used.nextClearBit(0);
+    if (free >= capacity) {
+      try {
+        map(capacity * 2, false);
+      } catch (IOException e) {
+        LOGGER.error("Failed to grow {}: {}", path.getFileName(), e.getMessage());
+        return -1;
+      }
+    }
+    used.set(free);
+    slots.put(scheduler.getID(), free);
+    int at = offset(free);
+    buffer.putLong(at, idHash(scheduler.getID()));
+    buffer.put(at + TYPE_AT, (byte) (scheduler.getType().ordinal() + 1));
+    buffer.put(at + FLAGS_AT, (byte) 0);
+    buffer.putShort(at + MINUTE_AT, (short) -1);
+    buffer.putInt(at + PROGRESS_AT, 0);
+    return at;
+  }
+
+  /**
+   * Moves the record of a renamed scheduler to its new ID.
+   */
+  public void rename(String oldId, String newId) {
+    Integer slot = slots.remove(oldId);
+    if (slot != null && buffer != null) {
+      slots.put(newId, slot);
+      buffer.putLong(offset(slot), idHash(newId));
+    }
+  }
+
+  public void remove(String id) {
+    Integer slot = slots.remove(id);
+    if (slot != null && buffer != null) {
+      free(slot);
+    }
+  }
+
+  private void free(int slot) {
+    buffer.putLong(offset(slot), 0);
+    used.clear(slot);
+  }
+
+  private static int offset(int slot) {
+    return HEADER + slot * RECORD;
+  }
+}
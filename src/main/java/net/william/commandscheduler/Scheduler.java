@@ -2,13 +2,23 @@ package net.william.commandscheduler;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
-public abstract class Scheduler {
+public abstract class Scheduler implements Cloneable {
 
     protected String ID;
     protected boolean active = true;
     protected String command;
     protected String description = "";
+    protected OutputMode output = OutputMode.BROADCAST;
+    protected LogPolicy log; // null follows the global setting
+
+    // Last run of a capturing scheduler, only kept in memory
+    private String capturedOutput;
+    private int capturedResult;
+    private long capturedMillis;
+
+    private static final Pattern ID_PATTERN = Pattern.compile("^[a-zA-Z0-9._-]+$");
 
     public Scheduler(String ID, boolean active, String command) {
         if (!setID(ID)) {
@@ -22,8 +32,10 @@ public abstract class Scheduler {
         return ID;
     }
 
+    public abstract Types getType();
+
     public boolean setID(String ID) {
-        if (ID.matches("^[a-zA-Z0-9._-]+$")) {
+        if (ID_PATTERN.matcher(ID).matches()) {
             this.ID = ID;
             return true;
         }
@@ -48,6 +60,13 @@ public abstract class Scheduler {
         this.command = command;
     }
 
+    /**
+     * Every command this scheduler can run.
+     */
+    public List<String> getAllCommands() {
+        return command != null ? List.of(command) : List.of();
+    }
+
     public boolean isActive() {
         return active;
     }
@@ -60,8 +79,85 @@ public abstract class Scheduler {
         this.description = (description != null) ? description : "";
     }
 
+    public OutputMode getOutput() {
+        return output;
+    }
+
+    public void setOutput(OutputMode output) {
+        this.output = (output != null) ? output : OutputMode.BROADCAST;
+    }
+
+    public LogPolicy getLog() {
+        return log;
+    }
+
+    public void setLog(LogPolicy log) {
+        this.log = log;
+    }
+
+    /**
+     * The log policy that applies. Without one of its own, a silent or
+     * capturing scheduler stays out of the log too.
+     */
+    public LogPolicy getLogPolicy() {
+        if (log != null) {
+            return log;
+        }
+        return output == OutputMode.BROADCAST ? ConfigHandler.getSettings().getLogPolicy() : LogPolicy.OFF;
+    }
+
+    /**
+     * Stores what the last command sent back and the value it returned.
+     */
+    public void capture(String text, int result, long nowMillis) {
+        this.capturedOutput = text;
+        this.capturedResult = result;
+        this.capturedMillis = nowMillis;
+    }
+
+    /**
+     * Null until a command ran with output capture.
+     */
+    public String getCapturedOutput() {
+        return capturedOutput;
+    }
+
+    public int getCapturedResult() {
+        return capturedResult;
+    }
+
+    public long getCapturedMillis() {
+        return capturedMillis;
+    }
+
+    /**
+     * Copy the I/O thread can save while the server thread keeps changing this
+     * scheduler. Lists that are never changed after construction are shared.
+     */
+    Scheduler copy() {
+        try {
+            return (Scheduler) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Stable hash of an ID used for phase offsets. String.hashCode is fixed by
+     * the spec, the extra mixing spreads IDs that only differ slightly.
+     */
+    public static int spreadHash(String id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
     public static boolean isValidID(String id) {
-        return id != null && id.matches("^[a-zA-Z0-9._-]+$");
+        return id != null && ID_PATTERN.matcher(id).matches();
     }
 
     private static final List<String> INVALID_COMMANDS = new ArrayList<>();
@@ -0,0 +1,477 @@
+package net.william.commandscheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming Gson adapters for the three scheduler types, so config files are
+ * read entry by entry without building a JSON tree first.
+ *
+ * Every legacy shape is still accepted: a single "command" or a "commands"
+ * array, flat or nested command groups, and json5 comments (as long as the
+ * reader is lenient). An entry that is valid JSON but not a valid scheduler
+ * is read to its end before a JsonParseException is thrown, so the caller
+ * can skip it and carry on with the next one.
+ */
+public final class SchedulerAdapters {
+
+  public static final TypeAdapter<Interval> INTERVAL = new IntervalAdapter();
+  public static final TypeAdapter<ClockBased> CLOCK_BASED = new ClockBasedAdapter();
+  public static final TypeAdapter<AtBoot> AT_BOOT = new AtBootAdapter();
+
+  private SchedulerAdapters() {
+  }
+
+  /**
+   * Command lists as they appear in the files: plain strings are single
+   * commands, arrays are groups.
+   */
+  private static final class Commands {
+    final List<String> flat = new ArrayList<>();
+    final List<List<String>> groups = new ArrayList<>();
+  }
+
+  /**
+   * Collects the fields of one entry before the scheduler is created.
+   * Subclasses add the fields of their type.
+   */
+  private static class Fields {
+    String id;
+    String description;
+    Boolean active;
+    Boolean spread;
+    boolean random;
+    String command;
+    Commands commands;
+    String output;
+    String log;
+    String error;
+
+    /**
+     * Reads the value of a field, returns false for unknown fields.
+     */
+    boolean read(JsonReader in, String name) throws IOException {
+      switch (name) {
+        case "ID" -> id = nextString(in);
+        case "description" -> description = nextString(in);
+        case "active" -> active = nextBoolean(in);
+        case "spread" -> spread = nextBoolean(in);
+        case "random" -> random = nextBoolean(in);
+        case "command" -> command = nextString(in);
+        case "commands" -> commands = readCommands(in);
+        case "output" -> output = nextString(in);
+        case "log" -> log = nextString(in);
+        default -> {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Reads one object. A value of the wrong type is skipped and reported
+     * once the whole object has been read.
+     */
+    void readObject(JsonReader in) throws IOException {
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        try {
+          if (!read(in, name)) {
+            in.skipValue();
+          }
+        } catch (IllegalStateException | NumberFormatException e) {
+          // The value that failed is still there to skip
+          in.skipValue();
+          if (error == null) {
+            error = "Invalid value for \"" + name + "\": " + e.getMessage();
+          }
+        }
+      }
+      in.endObject();
+
+      if (error != null) {
+        throw new JsonParseException(error);
+      }
+      if (id == null) {
+        throw new JsonParseException("Missing ID");
+      }
+    }
+  }
+
+  private static final class IntervalFields extends Fields {
+    int interval = -1;
+    String unit;
+    boolean runInstantly;
+    String clock;
+
+    @Override
+    boolean read(JsonReader in, String name) throws IOException {
+      switch (name) {
+        case "interval" -> interval = in.nextInt();
+        case "unit" -> unit = nextString(in);
+        case "runInstantly" -> runInstantly = nextBoolean(in);
+        case "clock" -> clock = nextString(in);
+        default -> {
+          return super.read(in, name);
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final class ClockBasedFields extends Fields {
+    final List<int[]> times = new ArrayList<>();
+    String misfire;
+
+    @Override
+    boolean read(JsonReader in, String name) throws IOException {
+      switch (name) {
+        case "times" -> readTimes(in, times);
+        case "misfire" -> misfire = nextString(in);
+        default -> {
+          return super.read(in, name);
+        }
+      }
+      return true;
+    }
+  }
+
+  private static String nextString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    if (in.peek() == JsonToken.BOOLEAN) {
+      return Boolean.toString(in.nextBoolean());
+    }
+    return in.nextString();
+  }
+
+  private static boolean nextBoolean(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.STRING) {
+      return Boolean.parseBoolean(in.nextString());
+    }
+    return in.nextBoolean();
+  }
+
+  private static Commands readCommands(JsonReader in) throws IOException {
+    Commands commands = new Commands();
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() == JsonToken.BEGIN_ARRAY) {
+        List<String> group = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+          addCommand(in, group);
+        }
+        in.endArray();
+        commands.groups.add(group);
+      } else {
+        addCommand(in, commands.flat);
+      }
+    }
+    in.endArray();
+    return commands;
+  }
+
+  private static void addCommand(JsonReader in, List<String> list) throws IOException {
+    JsonToken token = in.peek();
+    if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+      list.add(in.nextString());
+    } else {
+      in.skipValue();
+    }
+  }
+
+  private static void readTimes(JsonReader in, List<int[]> times) throws IOException {
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() != JsonToken.BEGIN_ARRAY) {
+        in.skipValue();
+        continue;
+      }
+      // Only whole [hour, minute] pairs, anything else is ignored
+      List<Integer> pair = new ArrayList<>(2);
+      in.beginArray();
+      while (in.hasNext()) {
+        if (in.peek() == JsonToken.NUMBER) {
+          double value = in.nextDouble();
+          pair.add(value == (int) value ? (int) value : null);
+        } else {
+          in.skipValue();
+          pair.add(null);
+        }
+      }
+      in.endArray();
+      if (pair.size() == 2 && pair.get(0) != null && pair.get(1) != null) {
+        times.add(new int[] { pair.get(0), pair.get(1) });
+      }
+    }
+    in.endArray();
+  }
+
+  private static void writeCommon(JsonWriter out, Scheduler scheduler) throws IOException {
+    out.name("ID").value(scheduler.getID());
+    out.name("description").value(scheduler.getDescription());
+    out.name("active").value(scheduler.isActive());
+  }
+
+  private static OutputMode outputMode(String output) {
+    return output != null ? OutputMode.fromString(output) : OutputMode.BROADCAST;
+  }
+
+  /**
+   * Output and log policy are only written when they aren't the default, so
+   * untouched entries stay as they were.
+   */
+  private static void writeOutput(JsonWriter out, Scheduler scheduler) throws IOException {
+    if (scheduler.getOutput() != OutputMode.BROADCAST) {
+      out.name("output").value(scheduler.getOutput().name().toLowerCase());
+    }
+    if (scheduler.getLog() != null) {
+      out.name("log").value(scheduler.getLog().name().toLowerCase());
+    }
+  }
+
+  private static void writeCommands(JsonWriter out, List<String> commands) throws IOException {
+    out.beginArray();
+    for (String command : commands) {
+      out.value(command);
+    }
+    out.endArray();
+  }
+
+  private static void writeGroups(JsonWriter out, List<List<String>> groups) throws IOException {
+    out.beginArray();
+    for (List<String> group : groups) {
+      writeCommands(out, group);
+    }
+    out.endArray();
+  }
+
+  /**
+   * "wall" runs an interval on real time, "ticks" (the default) on server
+   * ticks.
+   */
+  private static boolean isWallClock(String clock) {
+    if (clock == null || clock.equalsIgnoreCase("ticks") || clock.equalsIgnoreCase("tick")) {
+      return false;
+    }
+    if (clock.equalsIgnoreCase("wall")) {
+      return true;
+    }
+    throw new IllegalArgumentException("Invalid clock: " + clock);
+  }
+
+  private static final class IntervalAdapter extends TypeAdapter<Interval> {
+
+    @Override
+    public Interval read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      IntervalFields fields = new IntervalFields();
+      fields.readObject(in);
+      if (fields.unit == null) {
+        throw new JsonParseException("Missing unit for '" + fields.id + "'");
+      }
+
+      List<List<String>> commandGroups = new ArrayList<>();
+      if (fields.commands != null) {
+        commandGroups.addAll(fields.commands.groups);
+        if (!fields.commands.flat.isEmpty()) {
+          commandGroups.add(fields.commands.flat);
+        }
+      } else if (fields.command != null) {
+        // Legacy single command
+        commandGroups.add(List.of(fields.command));
+      }
+
+      try {
+        Interval ic = new Interval(fields.id, commandGroups, fields.interval, fields.unit, fields.runInstantly,
+            fields.random);
+        if (fields.active != null) {
+          ic.setActive(fields.active);
+        }
+        ic.setDescription(fields.description);
+        ic.setSpread(fields.spread);
+        ic.setWallClock(isWallClock(fields.clock));
+        ic.setOutput(outputMode(fields.output));
+        ic.setLog(fields.log != null ? LogPolicy.fromString(fields.log) : null);
+        return ic;
+      } catch (IllegalArgumentException e) {
+        throw new JsonParseException(e.getMessage() + " for '" + fields.id + "'");
+      }
+    }
+
+    @Override
+    public void write(JsonWriter out, Interval ic) throws IOException {
+      if (ic == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      writeCommon(out, ic);
+      out.name("interval").value(ic.getInterval());
+      out.name("unit").value(ic.getUnit().toString().toLowerCase());
+      out.name("runInstantly").value(ic.shouldRunInstantly());
+      if (ic.getSpread() != null) {
+        out.name("spread").value(ic.getSpread());
+      }
+      if (ic.isWallClock()) {
+        out.name("clock").value("wall");
+      }
+      writeOutput(out, ic);
+
+      List<List<String>> groups = ic.getCommandGroups();
+      if (groups != null && groups.size() > 1) {
+        out.name("commands");
+        writeGroups(out, groups);
+        out.name("random").value(ic.isRandom());
+      } else if (groups != null && !groups.isEmpty() && !groups.get(0).isEmpty()) {
+        out.name("commands");
+        writeCommands(out, groups.get(0));
+        out.name("random").value(ic.isRandom());
+      } else {
+        out.name("command").value(ic.getCommand()); // legacy single command
+      }
+      out.endObject();
+    }
+  }
+
+  private static final class ClockBasedAdapter extends TypeAdapter<ClockBased> {
+
+    @Override
+    public ClockBased read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      ClockBasedFields fields = new ClockBasedFields();
+      fields.readObject(in);
+
+      List<String> commands = new ArrayList<>();
+      List<List<String>> commandGroups = new ArrayList<>();
+      if (fields.commands != null) {
+        commands = fields.commands.flat;
+        commandGroups = fields.commands.groups;
+      } else if (fields.command != null) {
+        commands.add(fields.command); // legacy single command
+      }
+
+      try {
+        ClockBased cc = new ClockBased(fields.id, commands, commandGroups, fields.random);
+        cc.setActive(fields.active != null && fields.active);
+        cc.setDescription(fields.description);
+        cc.setSpread(fields.spread);
+        cc.setMisfire(fields.misfire != null ? Misfire.fromString(fields.misfire) : null);
+        cc.setOutput(outputMode(fields.output));
+        cc.setLog(fields.log != null ? LogPolicy.fromString(fields.log) : null);
+        for (int[] t : fields.times) {
+          cc.addTime(t[0], t[1]);
+        }
+        return cc;
+      } catch (IllegalArgumentException e) {
+        throw new JsonParseException(e.getMessage());
+      }
+    }
+
+    @Override
+    public void write(JsonWriter out, ClockBased cc) throws IOException {
+      if (cc == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      writeCommon(out, cc);
+
+      out.name("times").beginArray();
+      for (int[] t : cc.getTimes()) {
+        out.beginArray().value(t[0]).value(t[1]).endArray();
+      }
+      out.endArray();
+
+      List<String> commands = cc.getCommands() != null ? cc.getCommands() : List.of();
+      List<List<String>> groups = cc.getCommandGroups() != null ? cc.getCommandGroups() : List.of();
+      if (!commands.isEmpty() || !groups.isEmpty()) {
+        // Single commands and groups can be mixed in one array
+        out.name("commands").beginArray();
+        for (String command : commands) {
+          out.value(command);
+        }
+        for (List<String> group : groups) {
+          writeCommands(out, group);
+        }
+        out.endArray();
+      } else {
+        out.name("command").value(cc.getCommand()); // legacy
+      }
+
+      out.name("random").value(cc.isRandom());
+      if (cc.getSpread() != null) {
+        out.name("spread").value(cc.getSpread());
+      }
+      if (cc.getMisfire() != null) {
+        out.name("misfire").value(cc.getMisfire().name().toLowerCase());
+      }
+      writeOutput(out, cc);
+      out.endObject();
+    }
+  }
+
+  private static final class AtBootAdapter extends TypeAdapter<AtBoot> {
+
+    @Override
+    public AtBoot read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      Fields fields = new Fields();
+      fields.readObject(in);
+
+      String command = fields.command;
+      if (command == null && fields.commands != null && !fields.commands.flat.isEmpty()) {
+        command = fields.commands.flat.get(0);
+      }
+
+      try {
+        AtBoot oc = new AtBoot(fields.id, command);
+        oc.setActive(fields.active != null && fields.active);
+        oc.setDescription(fields.description);
+        oc.setOutput(outputMode(fields.output));
+        oc.setLog(fields.log != null ? LogPolicy.fromString(fields.log) : null);
+        return oc;
+      } catch (IllegalArgumentException e) {
+        throw new JsonParseException(e.getMessage());
+      }
+    }
+
+    @Override
+    public void write(JsonWriter out, AtBoot oc) throws IOException {
+      if (oc == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("ID").value(oc.getID());
+      out.name("active").value(oc.isActive());
+      out.name("command").value(oc.getCommand());
+      out.name("description").value(oc.getDescription());
+      writeOutput(out, oc);
+      out.endObject();
+    }
+  }
+}
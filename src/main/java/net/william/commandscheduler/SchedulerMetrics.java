@@ -0,0 +1,65 @@
+package net.william.commandscheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Execution stats of every scheduler that has run since the server started,
+ * by ID. Stats follow a scheduler through renames and edits, and are dropped
+ * when it is removed. Only used on the server thread.
+ */
+public class SchedulerMetrics {
+
+  public static final Comparator<Map.Entry<String, SchedulerStats>> BY_TOTAL_TIME = Comparator
+      .comparingLong((Map.Entry<String, SchedulerStats> e) -> e.getValue().getTotalNanos()).reversed();
+  public static final Comparator<Map.Entry<String, SchedulerStats>> BY_P99 = Comparator
+      .comparingLong((Map.Entry<String, SchedulerStats> e) -> e.getValue().percentileNanos(0.99)).reversed();
+
+  private final Map<String, SchedulerStats> byId = new HashMap<>();
+
+  public void record(String id, long nanos, boolean failed, long nowMillis) {
+    SchedulerStats stats = byId.get(id);
+    if (stats == null) {
+      stats = new SchedulerStats();
+      byId.put(id, stats);
+    }
+    stats.record(nanos, failed, nowMillis);
+  }
+
+  public SchedulerStats get(String id) {
+    return byId.get(id);
+  }
+
+  public void rename(String oldId, String newId) {
+    SchedulerStats stats = byId.remove(oldId);
+    if (stats != null) {
+      byId.put(newId, stats);
+    }
+  }
+
+  public void remove(String id) {
+    byId.remove(id);
+  }
+
+  public Map<String, SchedulerStats> asMap() {
+    return Collections.unmodifiableMap(byId);
+  }
+
+  public int size() {
+    return byId.size();
+  }
+
+  /**
+   * The schedulers that come first in the given order.
+   */
+  public List<Map.Entry<String, SchedulerStats>> top(Comparator<Map.Entry<String, SchedulerStats>> order,
+      int limit) {
+    List<Map.Entry<String, SchedulerStats>> entries = new ArrayList<>(byId.entrySet());
+    entries.sort(order);
+    return entries.subList(0, Math.min(limit, entries.size()));
+  }
+}
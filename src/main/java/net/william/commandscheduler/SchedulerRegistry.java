@@ -0,0 +1,266 @@
+package net.william.commandscheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every scheduler, indexed by ID, by type and by active state, plus a prefix
+ * trie of the IDs for tab completion. The type and state indexes are sorted
+ * by ID, so listings can read a single page of them.
+ *
+ * The lists per type keep the order of the config files. Changes to the ID or
+ * the active state of a registered scheduler have to go through here, so the
+ * indexes never go stale.
+ */
+public class SchedulerRegistry {
+
+  private final Map<String, Scheduler> byId = new HashMap<>();
+
+  private final List<Interval> intervals = new ArrayList<>();
+  private final List<ClockBased> clockBased = new ArrayList<>();
+  private final List<AtBoot> atBoot = new ArrayList<>();
+
+  // Index 0 holds the inactive schedulers, index 1 the active ones
+  private final List<SortedView> byState = List.of(new SortedView(), new SortedView());
+  private final Map<Types, SortedView> byType = new EnumMap<>(Types.class);
+  private final Map<Types, List<SortedView>> byTypeAndState = new EnumMap<>(Types.class);
+
+  private final IdTrie idTrie = new IdTrie();
+
+  public SchedulerRegistry() {
+    for (Types type : Types.values()) {
+      byType.put(type, new SortedView());
+      byTypeAndState.put(type, List.of(new SortedView(), new SortedView()));
+    }
+  }
+
+  public void clear() {
+    byId.clear();
+    intervals.clear();
+    clockBased.clear();
+    atBoot.clear();
+    idTrie.clear();
+    for (SortedView view : byState) {
+      view.clear();
+    }
+    for (SortedView view : byType.values()) {
+      view.clear();
+    }
+    for (List<SortedView> views : byTypeAndState.values()) {
+      for (SortedView view : views) {
+        view.clear();
+      }
+    }
+  }
+
+  /**
+   * Registers a scheduler, unless its ID is already taken.
+   */
+  public boolean add(Scheduler scheduler) {
+    return add(scheduler, false);
+  }
+
+  /**
+   * Registers many schedulers at once, the sorted indexes are only sorted
+   * once at the end. Returns the ones that weren't added because their ID
+   * was already taken.
+   */
+  public List<Scheduler> addAll(Collection<? extends Scheduler> schedulers) {
+    List<Scheduler> rejected = new ArrayList<>();
+    for (Scheduler scheduler : schedulers) {
+      if (!add(scheduler, true)) {
+        rejected.add(scheduler);
+      }
+    }
+    return rejected;
+  }
+
+  private boolean add(Scheduler scheduler, boolean bulk) {
+    if (byId.putIfAbsent(scheduler.getID(), scheduler) != null) {
+      return false;
+    }
+    if (scheduler instanceof Interval ic) {
+      intervals.add(ic);
+    } else if (scheduler instanceof ClockBased cc) {
+      clockBased.add(cc);
+    } else if (scheduler instanceof AtBoot oc) {
+      atBoot.add(oc);
+    }
+    if (bulk) {
+      byType.get(scheduler.getType()).addUnsorted(scheduler);
+      stateView(scheduler.getType(), scheduler.isActive()).addUnsorted(scheduler);
+      byState.get(scheduler.isActive() ? 1 : 0).addUnsorted(scheduler);
+    } else {
+      byType.get(scheduler.getType()).add(scheduler);
+      index(scheduler, scheduler.isActive(), true);
+    }
+    idTrie.add(scheduler);
+    return true;
+  }
+
+  public boolean remove(Scheduler scheduler) {
+    if (byId.get(scheduler.getID()) != scheduler) {
+      return false;
+    }
+    byId.remove(scheduler.getID());
+    listOf(scheduler.getType()).remove(scheduler);
+    byType.get(scheduler.getType()).remove(scheduler);
+    index(scheduler, scheduler.isActive(), false);
+    idTrie.remove(scheduler.getID());
+    return true;
+  }
+
+  /**
+   * Swaps a registered scheduler for another one with the same ID and type,
+   * keeping its place in the file order.
+   */
+  public boolean replace(Scheduler old, Scheduler replacement) {
+    if (byId.get(old.getID()) != old || !old.getID().equals(replacement.getID())
+        || old.getType() != replacement.getType()) {
+      return false;
+    }
+    int index = listOf(old.getType()).indexOf(old);
+    switch (old.getType()) {
+      case INTERVAL -> intervals.set(index, (Interval) replacement);
+      case CLOCKBASED -> clockBased.set(index, (ClockBased) replacement);
+      case ATBOOT -> atBoot.set(index, (AtBoot) replacement);
+    }
+    byId.put(replacement.getID(), replacement);
+
+    SortedView typeView = byType.get(old.getType());
+    typeView.remove(old);
+    index(old, old.isActive(), false);
+    typeView.add(replacement);
+    index(replacement, replacement.isActive(), true);
+    idTrie.update(replacement);
+    return true;
+  }
+
+  public Scheduler get(String id) {
+    return byId.get(id);
+  }
+
+  public boolean contains(String id) {
+    return byId.containsKey(id);
+  }
+
+  /**
+   * Changes the ID of a registered scheduler. Fails when the new ID is taken
+   * or not a valid ID.
+   */
+  public boolean rename(Scheduler scheduler, String newId) {
+    String oldId = scheduler.getID();
+    if (byId.get(oldId) != scheduler || byId.containsKey(newId) || !Scheduler.isValidID(newId)) {
+      return false;
+    }
+
+    // The sorted indexes have to find it under the old ID
+    SortedView typeView = byType.get(scheduler.getType());
+    typeView.remove(scheduler);
+    index(scheduler, scheduler.isActive(), false);
+    scheduler.setID(newId);
+    typeView.add(scheduler);
+    index(scheduler, scheduler.isActive(), true);
+
+    byId.remove(oldId);
+    byId.put(newId, scheduler);
+    idTrie.remove(oldId);
+    idTrie.add(scheduler);
+    return true;
+  }
+
+  /**
+   * Changes the active state of a registered scheduler, returns false if it
+   * already was in that state.
+   */
+  public boolean setActive(Scheduler scheduler, boolean active) {
+    if (scheduler.isActive() == active) {
+      return false;
+    }
+    index(scheduler, !active, false);
+    scheduler.setActive(active);
+    index(scheduler, active, true);
+    idTrie.update(scheduler);
+    return true;
+  }
+
+  private void index(Scheduler scheduler, boolean active, boolean add) {
+    SortedView all = byState.get(active ? 1 : 0);
+    SortedView ofType = stateView(scheduler.getType(), active);
+    if (add) {
+      all.add(scheduler);
+      ofType.add(scheduler);
+    } else {
+      all.remove(scheduler);
+      ofType.remove(scheduler);
+    }
+  }
+
+  private SortedView stateView(Types type, boolean active) {
+    return byTypeAndState.get(type).get(active ? 1 : 0);
+  }
+
+  private List<? extends Scheduler> listOf(Types type) {
+    return switch (type) {
+      case INTERVAL -> intervals;
+      case CLOCKBASED -> clockBased;
+      case ATBOOT -> atBoot;
+    };
+  }
+
+  public List<Interval> getIntervals() {
+    return Collections.unmodifiableList(intervals);
+  }
+
+  public List<ClockBased> getClockBased() {
+    return Collections.unmodifiableList(clockBased);
+  }
+
+  public List<AtBoot> getAtBoot() {
+    return Collections.unmodifiableList(atBoot);
+  }
+
+  public List<? extends Scheduler> getOfType(Types type) {
+    return Collections.unmodifiableList(listOf(type));
+  }
+
+  /**
+   * Every active or every inactive scheduler, sorted by ID.
+   */
+  public List<Scheduler> getWithState(boolean active) {
+    return getSorted(active).asList();
+  }
+
+  public List<Scheduler> getWithState(Types type, boolean active) {
+    return getSorted(type, active).asList();
+  }
+
+  public SortedView getSorted(Types type) {
+    return byType.get(type);
+  }
+
+  public SortedView getSorted(boolean active) {
+    return byState.get(active ? 1 : 0);
+  }
+
+  public SortedView getSorted(Types type, boolean active) {
+    return stateView(type, active);
+  }
+
+  public Collection<String> getIDs() {
+    return Collections.unmodifiableSet(byId.keySet());
+  }
+
+  public IdTrie getIdTrie() {
+    return idTrie;
+  }
+
+  public int size() {
+    return byId.size();
+  }
+}
@@ -0,0 +1,87 @@
+package net.william.commandscheduler;
+
+/**
+ * Execution counters of one scheduler: runs, failures, when it last ran,
+ * and how long its commands took to dispatch.
+ *
+ * Durations go into a histogram with one bucket per power of two
+ * nanoseconds, so recording a run is a few array and field updates and never
+ * allocates. Percentiles are the upper bound of the bucket they fall in,
+ * which is at most twice the real value and never below it.
+ */
+public class SchedulerStats {
+
+  // Bucket b holds durations below 2^b ns, the last one anything longer (~9 minutes)
+  static final int BUCKETS = 40;
+
+  private final long[] buckets = new long[BUCKETS];
+  private long runs;
+  private long failures;
+  private long totalNanos;
+  private long maxNanos;
+  private long lastRunMillis;
+
+  public void record(long nanos, boolean failed, long nowMillis) {
+    nanos = Math.max(0, nanos);
+    buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))]++;
+    runs++;
+    if (failed) {
+      failures++;
+    }
+    totalNanos += nanos;
+    maxNanos = Math.max(maxNanos, nanos);
+    lastRunMillis = nowMillis;
+  }
+
+  /**
+   * Duration that the given fraction of runs stayed under, rounded up to the
+   * next power of two and capped at the slowest run.
+   */
+  public long percentileNanos(double fraction) {
+    if (runs == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * runs));
+    long seen = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      seen += buckets[b];
+      if (seen >= rank) {
+        return b == BUCKETS - 1 ? maxNanos : Math.min(maxNanos, 1L << b);
+      }
+    }
+    return maxNanos;
+  }
+
+  /**
+   * Adds the run count of every bucket to the given array.
+   */
+  public void addBucketsTo(long[] into) {
+    for (int b = 0; b < BUCKETS; b++) {
+      into[b] += buckets[b];
+    }
+  }
+
+  public long getRuns() {
+    return runs;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  public long getAverageNanos() {
+    return runs == 0 ? 0 : totalNanos / runs;
+  }
+
+  public long getLastRunMillis() {
+    return lastRunMillis;
+  }
+}
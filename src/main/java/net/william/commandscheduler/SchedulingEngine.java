@@ -0,0 +1,225 @@
+package net.william.commandscheduler;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the schedulers of an EngineState, one tick at a time, without needing
+ * a server. Whatever drives it calls tick() once per server tick; the time
+ * comes from the given clock and due commands go to the given sink. Main
+ * drives it from the server tick event over the loaded config, simulations
+ * from a loop over a SimulatedClock.
+ *
+ * Config file handling and state checkpoints are left to the housekeeping
+ * hook, which runs at the end of every tick.
+ */
+public class SchedulingEngine {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  // Boot commands runs 15 seconds after boot
+  private static final int bootDelaySeconds = 15;
+
+  private final EngineState state;
+  private final WallClock clock;
+  private final CommandSink sink;
+  private final Runnable housekeeping;
+
+  // Created once so a tick doesn't allocate unless a command actually runs
+  private final Consumer<Interval> runInterval = this::runInterval;
+  private final Consumer<ClockBased> runClockBased = this::runClockBased;
+  private final DispatchQueue dispatchQueue;
+  // Late runs of clock-based schedulers, let through a few per tick
+  private final ArrayDeque<ClockBased> missedRuns = new ArrayDeque<>();
+  private final TickProfiler profiler = new TickProfiler();
+  private final RunLog runLog;
+
+  private long ticks = 0;
+  private int bootDelayTicks = 0;
+  private boolean ranBootCommands = false;
+  private long lastTickMillis = 0;
+
+  public SchedulingEngine(EngineState state, WallClock clock, CommandSink sink) {
+    this(state, clock, sink, () -> {
+    });
+  }
+
+  /**
+   * The clock has to be the one the wall-clock timer of the state runs on.
+   */
+  public SchedulingEngine(EngineState state, WallClock clock, CommandSink sink, Runnable housekeeping) {
+    this.state = state;
+    this.clock = clock;
+    this.sink = sink;
+    this.housekeeping = housekeeping;
+    this.dispatchQueue = new DispatchQueue(this::runScheduledCommand,
+        state.getSettings().getSpilloverCapacity());
+    this.runLog = new RunLog(state);
+  }
+
+  public void tick() {
+    profiler.beginTick();
+    long nowMillis = clock.currentTimeMillis();
+    runLog.tick(nowMillis);
+
+    // Commands deferred by earlier ticks go first
+    dispatchQueue.beginTick(++ticks, state.getSettings());
+    profiler.mark(TickProfiler.BACKLOG);
+
+    // At boot commands runs here!
+    if (!ranBootCommands && ++bootDelayTicks >= (bootDelaySeconds * TimeUnit.TICKS_PER_SECOND)) {
+      ranBootCommands = true;
+
+      for (AtBoot oc : state.getOnceAtBootCommands()) {
+        if (!oc.isExpired() && oc.isActive()) {
+          dispatchQueue.submit(oc, oc.getCommand());
+          oc.setExpired();
+        }
+      }
+    }
+    profiler.mark(TickProfiler.AT_BOOT);
+
+    // Interval commands runs here! Only the ones due this tick are visited
+    state.getIntervalTimer().advance(runInterval);
+    state.getWallClockTimer().advance(runInterval);
+    profiler.mark(TickProfiler.INTERVAL);
+
+    // Clock based commands runs here! Only evaluated when a minute with schedulers starts
+    ClockIndex clockIndex = state.getClockIndex();
+    if (lastTickMillis != 0 && nowMillis / 60_000 > lastTickMillis / 60_000) {
+      // A minute started since the last tick, it may have skipped over runs
+      catchUpClockBased(clockIndex, lastTickMillis, nowMillis);
+    }
+    lastTickMillis = nowMillis;
+    if (clockIndex.isDue(nowMillis)) {
+      clockIndex.evaluate(nowMillis, runClockBased);
+    }
+    runMissedClockBased();
+    profiler.mark(TickProfiler.CLOCK_BASED);
+
+    housekeeping.run();
+    profiler.endTick(state.getSettings());
+  }
+
+  /**
+   * Forgets the last tick and the late runs, for when the server stops. Time
+   * between two servers in the same game isn't a stall.
+   */
+  public void reset() {
+    lastTickMillis = 0;
+    missedRuns.clear();
+  }
+
+  /**
+   * Writes out the run log, with the counts of the current minute, before
+   * returning. For when the server is stopping.
+   */
+  public void flushLog() {
+    runLog.close();
+  }
+
+  private void runInterval(Interval ic) {
+    if (ic.shouldRunInstantly()) {
+      ic.setRunInstantly(false);
+      state.recordRanInstantly(ic);
+    }
+
+    List<String> group = ic.getCommandGroup();
+    for (int i = 0; i < group.size(); i++) {
+      dispatchQueue.submit(ic, group.get(i));
+    }
+    ic.run();
+  }
+
+  private void runClockBased(ClockBased cc) {
+    dispatchQueue.submit(cc, cc.getCommand());
+  }
+
+  /**
+   * Handles the clock-based runs that fell between two ticks. A stall is a
+   * gap that skipped at least one whole minute. After one, every scheduler
+   * follows its misfire policy and the late runs are queued. A shorter gap,
+   * like a slow world save, only skipped the end of the previous minute.
+   * That minute is evaluated to its end, so its runs go through the same
+   * guard as always and no misfire policy applies.
+   */
+  private void catchUpClockBased(ClockIndex clockIndex, long fromMillis, long nowMillis) {
+    if (Math.floorDiv(nowMillis, 60_000L) - Math.floorDiv(fromMillis, 60_000L) <= 1) {
+      long previousMinuteEnd = nowMillis - Math.floorMod(nowMillis, 60_000L) - 1;
+      clockIndex.evaluate(previousMinuteEnd, runClockBased);
+      return;
+    }
+    Map<ClockBased, Integer> missed = clockIndex.missedBetween(fromMillis, nowMillis);
+    if (missed.isEmpty()) {
+      return;
+    }
+
+    int maxRuns = state.getSettings().getMaxMissedRuns();
+    int missedTotal = 0;
+    int queued = 0;
+    for (Map.Entry<ClockBased, Integer> entry : missed.entrySet()) {
+      ClockBased cc = entry.getKey();
+      int runs = switch (cc.getMisfirePolicy()) {
+        case SKIP -> 0;
+        case ONCE -> 1;
+        case ALL -> Math.min(entry.getValue(), maxRuns);
+      };
+      for (int i = 0; i < runs; i++) {
+        missedRuns.add(cc);
+      }
+      missedTotal += entry.getValue();
+      queued += runs;
+    }
+    LOGGER.warn("Server didn't tick for {} s, {} clock-based schedulers missed {} runs, {} of them will run late",
+        (nowMillis - fromMillis) / 1000, missed.size(), missedTotal, queued);
+  }
+
+  private void runMissedClockBased() {
+    int budget = state.getSettings().getMissedRunsPerTick();
+    while (budget > 0 && !missedRuns.isEmpty()) {
+      ClockBased cc = missedRuns.poll();
+      // Skip schedulers that were deactivated or removed in the meantime
+      if (cc.isActive() && state.getCommandById(cc.getID()) == cc) {
+        runClockBased(cc);
+        budget--;
+      }
+    }
+  }
+
+  private void runScheduledCommand(Scheduler owner, String command) {
+    long start = System.nanoTime();
+    boolean failed;
+    try {
+      failed = !sink.execute(owner, command);
+    } catch (RuntimeException e) {
+      // A broken command shouldn't take the rest of the tick down with it
+      failed = true;
+      LOGGER.error("Command '{}' of '{}' threw: {}", command, owner.getID(), e.toString());
+    }
+    long nanos = System.nanoTime() - start;
+    state.getMetrics().record(owner.getID(), nanos, failed, clock.currentTimeMillis());
+    runLog.record(owner, command, nanos, failed);
+    profiler.fired(owner);
+  }
+
+  public long getTicks() {
+    return ticks;
+  }
+
+  public WallClock getClock() {
+    return clock;
+  }
+
+  public DispatchQueue getDispatchQueue() {
+    return dispatchQueue;
+  }
+
+  public TickProfiler getProfiler() {
+    return profiler;
+  }
+}
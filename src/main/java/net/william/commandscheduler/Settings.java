@@ -0,0 +1,155 @@
+package net.william.commandscheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Global settings from settings.json5. Missing entries keep the defaults
+ * below, so older files keep working when new settings are added.
+ */
+public class Settings {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+    // 0 means no limit
+    private int maxCommandsPerTick = 0;
+    private long tickBudgetMicros = 0;
+    private int spilloverCapacity = 1024;
+    private boolean spreadLoad = false;
+    private int parseCacheSize = 4096;
+    private boolean backgroundPlanning = false;
+    private int planningLookaheadTicks = 20;
+    private long saveDelayMillis = 1000;
+    private boolean journal = false;
+    private long journalMaxBytes = 1048576;
+    private int suggestionLimit = 100;
+    private boolean configCache = true;
+    private boolean watchConfig = false;
+    private int stateCheckpointSeconds = 30;
+    private String misfire = "once";
+    private int maxMissedRuns = 10;
+    private int missedRunsPerTick = 1;
+    private long tickWarningMicros = 10000;
+    private boolean metricsExporter = false;
+    private String metricsAddress = "127.0.0.1";
+    private int metricsPort = 9464;
+    private String logPolicy = "aggregated";
+    private int logSampleRate = 100;
+    private int logQueueSize = 4096;
+
+    // Parsed from logPolicy once the file is loaded, it is read on every run
+    private transient LogPolicy parsedLogPolicy = LogPolicy.AGGREGATED;
+
+    /**
+     * Called once after loading. Parses the settings that are read too often
+     * to parse every time, and warns about invalid values.
+     */
+    void parse() {
+        try {
+            parsedLogPolicy = LogPolicy.fromString(logPolicy);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("{} in settings.json5, using aggregated", e.getMessage());
+            parsedLogPolicy = LogPolicy.AGGREGATED;
+        }
+    }
+
+    public int getMaxCommandsPerTick() {
+        return Math.max(0, maxCommandsPerTick);
+    }
+
+    public long getTickBudgetNanos() {
+        return Math.max(0, tickBudgetMicros) * 1000L;
+    }
+
+    public int getSpilloverCapacity() {
+        return Math.max(1, spilloverCapacity);
+    }
+
+    public boolean isSpreadLoad() {
+        return spreadLoad;
+    }
+
+    public int getParseCacheSize() {
+        return Math.max(1, parseCacheSize);
+    }
+
+    public boolean isBackgroundPlanning() {
+        return backgroundPlanning;
+    }
+
+    public int getPlanningLookaheadTicks() {
+        return Math.max(1, planningLookaheadTicks);
+    }
+
+    public long getSaveDelayNanos() {
+        return Math.max(0, saveDelayMillis) * 1_000_000L;
+    }
+
+    public boolean isJournal() {
+        return journal;
+    }
+
+    public long getJournalMaxBytes() {
+        return Math.max(1, journalMaxBytes);
+    }
+
+    public int getSuggestionLimit() {
+        return Math.max(1, suggestionLimit);
+    }
+
+    public boolean isConfigCache() {
+        return configCache;
+    }
+
+    public boolean isWatchConfig() {
+        return watchConfig;
+    }
+
+    public long getStateCheckpointNanos() {
+        return Math.max(0, stateCheckpointSeconds) * 1_000_000_000L;
+    }
+
+    public Misfire getMisfire() {
+        try {
+            return Misfire.fromString(misfire);
+        } catch (IllegalArgumentException e) {
+            return Misfire.ONCE;
+        }
+    }
+
+    public int getMaxMissedRuns() {
+        return Math.max(1, maxMissedRuns);
+    }
+
+    public int getMissedRunsPerTick() {
+        return Math.max(1, missedRunsPerTick);
+    }
+
+    public long getTickWarningNanos() {
+        return Math.max(0, tickWarningMicros) * 1000L;
+    }
+
+    public boolean isMetricsExporter() {
+        return metricsExporter;
+    }
+
+    public String getMetricsAddress() {
+        return metricsAddress == null || metricsAddress.isBlank() ? "127.0.0.1" : metricsAddress;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public LogPolicy getLogPolicy() {
+        return parsedLogPolicy;
+    }
+
+    public int getLogSampleRate() {
+        return Math.max(1, logSampleRate);
+    }
+
+    public int getLogQueueSize() {
+        return Math.max(16, logQueueSize);
+    }
+}
@@ -0,0 +1,39 @@
+package net.william.commandscheduler;
+
+/**
+ * A clock that only moves when told to, so days of schedule behaviour can be
+ * run through SchedulingEngine in seconds. Both readings move together.
+ */
+public class SimulatedClock implements WallClock {
+
+  public static final long MILLIS_PER_TICK = 1000 / TimeUnit.TICKS_PER_SECOND;
+
+  private long millis;
+  private long nanos = 0;
+
+  public SimulatedClock(long startMillis) {
+    this.millis = startMillis;
+  }
+
+  public void advanceMillis(long delta) {
+    millis += delta;
+    nanos += delta * 1_000_000L;
+  }
+
+  /**
+   * Moves forward by one server tick at 20 TPS.
+   */
+  public void advanceTick() {
+    advanceMillis(MILLIS_PER_TICK);
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return millis;
+  }
+
+  @Override
+  public long nanoTime() {
+    return nanos;
+  }
+}
@@ -0,0 +1,98 @@
+package net.william.commandscheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Schedulers sorted by ID, for listings that are read a page at a time.
+ *
+ * Single changes keep the list sorted with a binary search. When a lot of
+ * schedulers are added at once (loading the configs), the list is only
+ * sorted once the next time it is read.
+ */
+public class SortedView {
+
+  public static final Comparator<Scheduler> ORDER = Comparator
+      .comparing(Scheduler::getID, String.CASE_INSENSITIVE_ORDER)
+      .thenComparing(Scheduler::getID);
+
+  private final ArrayList<Scheduler> items = new ArrayList<>();
+  private final List<Scheduler> readOnly = Collections.unmodifiableList(items);
+  private boolean sorted = true;
+
+  public void add(Scheduler scheduler) {
+    if (sorted && !items.isEmpty() && ORDER.compare(items.get(items.size() - 1), scheduler) > 0) {
+      int index = Collections.binarySearch(items, scheduler, ORDER);
+      items.add(index < 0 ? -index - 1 : index, scheduler);
+    } else {
+      items.add(scheduler);
+    }
+  }
+
+  /**
+   * Appends without sorting, for adding many schedulers in a row.
+   */
+  public void addUnsorted(Scheduler scheduler) {
+    items.add(scheduler);
+    sorted = false;
+  }
+
+  /**
+   * Must be called while the scheduler still has the ID it was added with.
+   */
+  public boolean remove(Scheduler scheduler) {
+    sort();
+    int index = Collections.binarySearch(items, scheduler, ORDER);
+    if (index < 0 || items.get(index) != scheduler) {
+      return items.remove(scheduler);
+    }
+    items.remove(index);
+    return true;
+  }
+
+  public void clear() {
+    items.clear();
+    sorted = true;
+  }
+
+  public int size() {
+    return items.size();
+  }
+
+  public boolean isEmpty() {
+    return items.isEmpty();
+  }
+
+  private void sort() {
+    if (!sorted) {
+      items.sort(ORDER);
+      sorted = true;
+    }
+  }
+
+  /**
+   * The whole view in order, as a read-only list.
+   */
+  public List<Scheduler> asList() {
+    sort();
+    return readOnly;
+  }
+
+  /**
+   * One page of the view, pages start at 1. Empty if the page doesn't exist.
+   */
+  public List<Scheduler> page(int page, int perPage) {
+    sort();
+    int start = (page - 1) * perPage;
+    if (page < 1 || start >= items.size()) {
+      return List.of();
+    }
+    return readOnly.subList(start, Math.min(start + perPage, items.size()));
+  }
+
+  public int pageCount(int perPage) {
+    return (items.size() + perPage - 1) / perPage;
+  }
+}
@@ -0,0 +1,54 @@
+package net.william.commandscheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer
+ * thread. Neither side allocates or blocks.
+ */
+public class SpscQueue<T> {
+
+  private final Object[] buffer;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  public SpscQueue(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.buffer = new Object[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * Producer side. Returns false if the queue is full.
+   */
+  public boolean offer(T value) {
+    long t = tail.get();
+    if (t - head.get() == buffer.length) {
+      return false;
+    }
+    buffer[(int) t & mask] = value;
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /**
+   * Consumer side. Returns null if the queue is empty.
+   */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    long h = head.get();
+    if (h == tail.get()) {
+      return null;
+    }
+    int index = (int) h & mask;
+    T value = (T) buffer[index];
+    buffer[index] = null;
+    head.lazySet(h + 1);
+    return value;
+  }
+
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+}
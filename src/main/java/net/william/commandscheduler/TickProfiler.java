@@ -0,0 +1,190 @@
+package net.william.commandscheduler;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times the phases of the mod's tick handler for the last WINDOW ticks.
+ *
+ * Each phase ends with a mark, which stores the nanoseconds since the previous
+ * mark in a ring buffer per phase, so profiling costs a few nanoTime calls per
+ * tick and never allocates. Percentiles are only computed when asked for.
+ *
+ * When a whole tick takes longer than the tickWarningMicros setting, a warning
+ * names the phases and the schedulers whose commands ran in that tick. At most
+ * one warning is logged per minute, with a count of the slow ticks in between.
+ */
+public class TickProfiler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("CommandScheduler");
+
+  // Phases in the order they run, TOTAL is the whole handler
+  public static final int BACKLOG = 0;
+  public static final int AT_BOOT = 1;
+  public static final int INTERVAL = 2;
+  public static final int CLOCK_BASED = 3;
+  public static final int HOUSEKEEPING = 4;
+  public static final int TOTAL = 5;
+  private static final String[] NAMES = { "Backlog", "At boot", "Intervals", "Clock-based", "Housekeeping",
+      "Total" };
+
+  // One minute of ticks
+  public static final int WINDOW = 60 * TimeUnit.TICKS_PER_SECOND;
+  private static final long WARNING_INTERVAL_NANOS = 60_000_000_000L;
+  private static final int MAX_NAMED = 10;
+
+  private final long[][] samples = new long[TOTAL + 1][WINDOW];
+  private int index = 0;
+  private int count = 0;
+  // Since the server started, for the metrics exporter
+  private final long[] totalNanos = new long[TOTAL + 1];
+  private long ticks = 0;
+  private long tickStart;
+  private long lastMark;
+
+  // Schedulers whose commands ran this tick, by ID
+  private final String[] fired = new String[MAX_NAMED];
+  private int firedCount = 0;
+
+  private boolean warned = false;
+  private long lastWarningNanos;
+  private int slowTicksSinceWarning = 0;
+
+  public static String nameOf(int phase) {
+    return NAMES[phase];
+  }
+
+  public void beginTick() {
+    tickStart = System.nanoTime();
+    lastMark = tickStart;
+    firedCount = 0;
+  }
+
+  /**
+   * Ends the given phase.
+   */
+  public void mark(int phase) {
+    long now = System.nanoTime();
+    samples[phase][index] = now - lastMark;
+    totalNanos[phase] += now - lastMark;
+    lastMark = now;
+  }
+
+  /**
+   * Notes that a command of the scheduler ran in this tick.
+   */
+  public void fired(Scheduler scheduler) {
+    String id = scheduler.getID();
+    for (int i = 0; i < Math.min(firedCount, MAX_NAMED); i++) {
+      if (fired[i].equals(id)) {
+        return;
+      }
+    }
+    if (firedCount < MAX_NAMED) {
+      fired[firedCount] = id;
+    }
+    firedCount++;
+  }
+
+  /**
+   * Ends the housekeeping phase and the tick, and warns if it went over the
+   * threshold.
+   */
+  public void endTick(Settings settings) {
+    mark(HOUSEKEEPING);
+    long total = lastMark - tickStart;
+    samples[TOTAL][index] = total;
+    totalNanos[TOTAL] += total;
+    ticks++;
+
+    long threshold = settings.getTickWarningNanos();
+    if (threshold > 0 && total > threshold) {
+      slowTick(total, threshold);
+    }
+
+    index = (index + 1) % WINDOW;
+    count = Math.min(count + 1, WINDOW);
+  }
+
+  private void slowTick(long total, long threshold) {
+    if (warned && lastMark - lastWarningNanos < WARNING_INTERVAL_NANOS) {
+      slowTicksSinceWarning++;
+      return;
+    }
+
+    StringBuilder phases = new StringBuilder();
+    for (int phase = 0; phase < TOTAL; phase++) {
+      if (phase > 0) {
+        phases.append(", ");
+      }
+      phases.append(NAMES[phase].toLowerCase()).append(' ').append(formatMillis(samples[phase][index]));
+    }
+    StringBuilder schedulers = new StringBuilder();
+    for (int i = 0; i < Math.min(firedCount, MAX_NAMED); i++) {
+      schedulers.append(i > 0 ? ", " : "").append(fired[i]);
+    }
+    if (firedCount > MAX_NAMED) {
+      schedulers.append(" and ").append(firedCount - MAX_NAMED).append(" more");
+    }
+
+    LOGGER.warn("Scheduled commands took {} ms of a tick, over the {} ms threshold ({}). Ran: {}{}",
+        formatMillis(total), formatMillis(threshold), phases, firedCount == 0 ? "nothing" : schedulers,
+        slowTicksSinceWarning > 0 ? ". " + slowTicksSinceWarning + " more slow ticks since the last warning" : "");
+    warned = true;
+    lastWarningNanos = lastMark;
+    slowTicksSinceWarning = 0;
+  }
+
+  private static String formatMillis(long nanos) {
+    return String.format("%.2f", nanos / 1e6);
+  }
+
+  /**
+   * How many ticks the percentiles are taken over.
+   */
+  public int getSampleCount() {
+    return count;
+  }
+
+  /**
+   * Nanoseconds the given fraction of the recorded ticks spent at most in a
+   * phase. Sorts a copy of the window, so only for commands.
+   */
+  public long percentileNanos(int phase, double fraction) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samples[phase], count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(fraction * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, rank))];
+  }
+
+  /**
+   * The recorded durations of a phase, in no particular order.
+   */
+  public long[] copySamples(int phase) {
+    return Arrays.copyOf(samples[phase], count);
+  }
+
+  public long getTotalNanos(int phase) {
+    return totalNanos[phase];
+  }
+
+  public long getTicks() {
+    return ticks;
+  }
+
+  public long averageNanos(int phase) {
+    if (count == 0) {
+      return 0;
+    }
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += samples[phase][i];
+    }
+    return sum / count;
+  }
+}
@@ -0,0 +1,30 @@
+package net.william.commandscheduler;
+
+/**
+ * Where the scheduling engine gets the time from. The server uses the system
+ * clock, simulations step a SimulatedClock forward with every tick.
+ */
+public interface WallClock {
+
+  WallClock SYSTEM = new WallClock() {
+    @Override
+    public long currentTimeMillis() {
+      return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+  };
+
+  /**
+   * Milliseconds since the epoch, for clock-based schedulers.
+   */
+  long currentTimeMillis();
+
+  /**
+   * Monotonic nanoseconds, for wall-clock intervals.
+   */
+  long nanoTime();
+}
@@ -0,0 +1,122 @@
+package net.william.commandscheduler;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Timer for intervals with "clock": "wall", which run on real time instead
+ * of server ticks, so a lagging server doesn't stretch their period.
+ *
+ * Every armed interval has a System.nanoTime() deadline, and the intervals
+ * are kept in a heap ordered by it. Each tick pops whatever is past due. An
+ * interval runs at most once per tick, and is re-armed from the deadline it
+ * was due on rather than from the time it actually ran, so it doesn't drift.
+ * Periods it missed entirely, during a stall, are folded into that one run.
+ *
+ * Progress is still expressed in ticks of 50 ms, so wall-clock intervals
+ * can be saved and restored like any other.
+ */
+public class WallClockTimer implements IntervalTimer {
+
+  public static final long NANOS_PER_TICK = 1_000_000_000L / TimeUnit.TICKS_PER_SECOND;
+
+  // Values for Interval.wallState
+  static final int UNLINKED = 0;
+  static final int ARMED = 1;
+  static final int FIRING = 2;
+
+  private final PriorityQueue<Interval> heap = new PriorityQueue<>(
+      Comparator.comparingLong((Interval ic) -> ic.wallDeadline));
+  private final LongSupplier clock;
+  private long currentTick = 0;
+
+  public WallClockTimer() {
+    this(System::nanoTime);
+  }
+
+  WallClockTimer(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Arms the interval based on its progress. One that should run instantly
+   * and hasn't run yet is due right away.
+   */
+  @Override
+  public void schedule(Interval ic) {
+    if (ic.wallState == ARMED) {
+      heap.remove(ic);
+    }
+    if (!ic.hasRan() && ic.shouldRunInstantly()) {
+      ic.fastForwardUntilNextRun();
+    }
+    long remaining = ic.getPeriodNanos() - ic.getTickCounter() * NANOS_PER_TICK;
+    ic.wallDeadline = clock.getAsLong() + Math.max(0, remaining);
+    ic.wallState = ARMED;
+    heap.add(ic);
+  }
+
+  /**
+   * Disarms the interval and stores how far it got in its tick counter.
+   */
+  @Override
+  public void unschedule(Interval ic) {
+    if (ic.wallState == ARMED) {
+      ic.setTickCounter(progressOf(ic));
+      heap.remove(ic);
+    }
+    ic.wallState = UNLINKED;
+  }
+
+  @Override
+  public int progressOf(Interval ic) {
+    if (ic.wallState != ARMED) {
+      return ic.getTickCounter();
+    }
+    long left = Math.max(0, ic.wallDeadline - clock.getAsLong());
+    return (int) Math.max(0, ic.getPeriodTicks() - (left + NANOS_PER_TICK - 1) / NANOS_PER_TICK);
+  }
+
+  @Override
+  public void clear() {
+    for (Interval ic : heap) {
+      ic.wallState = UNLINKED;
+    }
+    heap.clear();
+  }
+
+  @Override
+  public void advance(Consumer<Interval> onDue) {
+    currentTick++;
+    if (heap.isEmpty()) {
+      return;
+    }
+
+    long now = clock.getAsLong();
+    Interval ic;
+    while ((ic = heap.peek()) != null && ic.wallDeadline <= now) {
+      heap.poll();
+      long deadline = ic.wallDeadline;
+      ic.wallState = FIRING;
+      onDue.accept(ic);
+      if (ic.wallState == FIRING) {
+        // Next deadline on the original schedule that is still ahead
+        long period = Math.max(1, ic.getPeriodNanos());
+        ic.wallDeadline = deadline + period * ((now - deadline) / period + 1);
+        ic.wallState = ARMED;
+        heap.add(ic);
+      }
+    }
+  }
+
+  @Override
+  public long getCurrentTick() {
+    return currentTick;
+  }
+
+  public int size() {
+    return heap.size();
+  }
+}
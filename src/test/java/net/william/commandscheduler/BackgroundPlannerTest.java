@@ -0,0 +1,120 @@
+package net.william.commandscheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the same intervals through a BackgroundPlanner and an IntervalWheel
+ * and checks that they fire on the same ticks, also while the planner
+ * thread is held back or behind on the changes it was sent.
+ */
+class BackgroundPlannerTest {
+
+  private static final int[] PERIODS = { 1, 3, 5, 7, 20, 100 };
+
+  private final List<String> planned = new ArrayList<>();
+  private final List<String> expected = new ArrayList<>();
+
+  private static Interval[] intervals(String prefix) {
+    Interval[] intervals = new Interval[PERIODS.length];
+    for (int i = 0; i < PERIODS.length; i++) {
+      intervals[i] = new Interval(prefix + i, "say " + i, PERIODS[i], "ticks", i % 2 == 0);
+    }
+    return intervals;
+  }
+
+  private static void advance(IntervalTimer timer, List<String> fired) {
+    long tick = timer.getCurrentTick() + 1;
+    timer.advance(ic -> {
+      fired.add(tick + ":" + ic.getID().substring(1));
+      ic.run();
+    });
+  }
+
+  @Test
+  void heldBackPlannerFiresOnExactTicks() {
+    BackgroundPlanner planner = new BackgroundPlanner(0, 4, false);
+    IntervalWheel wheel = new IntervalWheel(0);
+    Interval[] a = intervals("p");
+    Interval[] b = intervals("w");
+    for (int i = 0; i < a.length; i++) {
+      planner.schedule(a[i]);
+      wheel.schedule(b[i]);
+    }
+
+    // Nothing is planned in the background yet
+    for (int t = 0; t < 250; t++) {
+      advance(planner, planned);
+      advance(wheel, expected);
+    }
+    assertEquals(250, planner.getUnplannedTicks());
+    // Every 7 ticks, and every 5 ticks starting right away
+    assertTrue(planned.contains("7:3") && planned.contains("14:3") && !planned.contains("8:3"));
+    assertTrue(planned.contains("1:2") && planned.contains("6:2") && !planned.contains("5:2"));
+
+    // Changes the stopped planner never applied
+    planner.unschedule(a[3]);
+    wheel.unschedule(b[3]);
+    planner.schedule(a[3]);
+    wheel.schedule(b[3]);
+    for (int t = 0; t < 50; t++) {
+      advance(planner, planned);
+      advance(wheel, expected);
+    }
+
+    // The planner starts far behind the server and catches up
+    planner.startPlanner();
+    for (int t = 0; t < 5000; t++) {
+      advance(planner, planned);
+      advance(wheel, expected);
+    }
+    planner.shutdown();
+
+    assertSameRuns();
+  }
+
+  @Test
+  void changesThePlannerHasNotAppliedFireOnExactTicks() {
+    BackgroundPlanner planner = new BackgroundPlanner(0, 20);
+    IntervalWheel wheel = new IntervalWheel(0);
+    Interval[] a = intervals("p");
+    Interval[] b = intervals("w");
+    boolean[] armed = new boolean[a.length];
+    Random random = new Random(42);
+
+    for (int t = 0; t < 20_000; t++) {
+      // Every change is made right before the tick it may already be due on
+      int i = random.nextInt(a.length * 4);
+      if (i < a.length) {
+        if (armed[i]) {
+          planner.unschedule(a[i]);
+          wheel.unschedule(b[i]);
+        } else {
+          planner.schedule(a[i]);
+          wheel.schedule(b[i]);
+        }
+        armed[i] = !armed[i];
+      }
+      advance(planner, planned);
+      advance(wheel, expected);
+    }
+    planner.shutdown();
+
+    assertTrue(expected.size() > 10_000);
+    assertSameRuns();
+  }
+
+  // The order inside a tick may differ between the two timers
+  private void assertSameRuns() {
+    Collections.sort(expected);
+    Collections.sort(planned);
+    assertEquals(expected, planned);
+  }
+}
@@ -0,0 +1,139 @@
+package net.william.commandscheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SchedulingEngineTest {
+
+  // A day without a DST transition, starting at local midnight
+  private static final long MIDNIGHT = LocalDate.of(2026, 1, 15)
+      .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+  private SimulatedClock clock;
+  private SimulatedState state;
+  private SchedulingEngine engine;
+  private final Map<String, Integer> runs = new HashMap<>();
+
+  @BeforeEach
+  void setUp() {
+    clock = new SimulatedClock(MIDNIGHT);
+    state = new SimulatedState(clock);
+    engine = new SchedulingEngine(state, clock, (owner, command) -> {
+      runs.merge(owner.getID(), 1, Integer::sum);
+      return true;
+    });
+  }
+
+  private void tick(int ticks) {
+    for (int i = 0; i < ticks; i++) {
+      clock.advanceTick();
+      engine.tick();
+    }
+  }
+
+  private int runsOf(String id) {
+    return runs.getOrDefault(id, 0);
+  }
+
+  @Test
+  void simulatedDayRunsEverySchedulerOnTime() {
+    state.add(new Interval("every-minute", "say minute", 1, "minutes", false));
+    state.add(new Interval("every-second", "say second", 20, "ticks", false));
+    Interval wall = new Interval("wall-hourly", "say hour", 1, "hours", false);
+    wall.setWallClock(true);
+    state.add(wall);
+
+    ClockBased cc = new ClockBased("twice-a-day", "say clock");
+    cc.addTime(6, 30);
+    cc.addTime(18, 0);
+    state.add(cc);
+
+    state.add(new AtBoot("at-boot", "say boot"));
+
+    tick(TimeUnit.TICKS_PER_DAY);
+
+    assertEquals(24 * 60, runsOf("every-minute"));
+    assertEquals(24 * 60 * 60, runsOf("every-second"));
+    assertEquals(24, runsOf("wall-hourly"));
+    assertEquals(2, runsOf("twice-a-day"));
+    assertEquals(1, runsOf("at-boot"));
+    assertEquals(TimeUnit.TICKS_PER_DAY, engine.getTicks());
+    assertEquals(2, state.getMetrics().get("twice-a-day").getRuns());
+  }
+
+  // A spread scheduler whose offset falls in the last part of its minute
+  private static ClockBased spreadAtLeast(long offsetMillis) {
+    for (int i = 0;; i++) {
+      ClockBased candidate = new ClockBased("late-" + i, "say late");
+      candidate.setSpread(true);
+      if (candidate.getMinuteOffsetMillis() >= offsetMillis) {
+        return candidate;
+      }
+    }
+  }
+
+  @Test
+  void spreadRunSkippedByShortGapRunsOnce() {
+    ClockBased cc = spreadAtLeast(59_500);
+    cc.addTime(1, 0);
+    state.add(cc);
+
+    // The last tick before the offset, then one that skips past the minute
+    clock.advanceMillis(60 * 60_000L + 59_400);
+    engine.tick();
+    assertEquals(0, runsOf(cc.getID()));
+    clock.advanceMillis(900);
+    engine.tick();
+    assertEquals(1, runsOf(cc.getID()));
+
+    tick(TimeUnit.TICKS_PER_MINUTE);
+    assertEquals(1, runsOf(cc.getID()));
+    assertEquals(List.of(1, 0), List.of(cc.getLastRunHour(), cc.getLastRunMinute()));
+  }
+
+  @Test
+  void gapWithoutWholeMinuteIgnoresSkipPolicy() {
+    ClockBased cc = spreadAtLeast(59_000);
+    cc.setMisfire(Misfire.SKIP);
+    cc.addTime(1, 0);
+    state.add(cc);
+
+    // A 1.5 s world save right before the offset, into the next minute
+    clock.advanceMillis(60 * 60_000L + 58_900);
+    engine.tick();
+    clock.advanceMillis(1_500);
+    engine.tick();
+
+    assertEquals(1, runsOf(cc.getID()));
+  }
+
+  @Test
+  void stallRunsMissedClockBasedByMisfirePolicy() {
+    ClockBased once = new ClockBased("once", "say once");
+    ClockBased skip = new ClockBased("skip", "say skip");
+    skip.setMisfire(Misfire.SKIP);
+    for (int hour = 1; hour <= 3; hour++) {
+      once.addTime(hour, 0);
+      skip.addTime(hour, 0);
+    }
+    state.add(once);
+    state.add(skip);
+
+    tick(1);
+    // The server doesn't tick from 00:00 until 04:00
+    clock.advanceMillis(4 * 60 * 60_000L);
+    tick(1);
+
+    assertEquals(1, runsOf("once"));
+    assertEquals(0, runsOf("skip"));
+    assertEquals(0, engine.getDispatchQueue().getDepth());
+  }
+}
@@ -0,0 +1,79 @@
+package net.william.commandscheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedulers and timers for a SchedulingEngine without any config files,
+ * with the wall-clock timer running on the given simulated clock.
+ */
+class SimulatedState implements EngineState {
+
+  private final Settings settings = new Settings();
+  private final Map<String, Scheduler> schedulers = new HashMap<>();
+  private final List<AtBoot> atBoot = new ArrayList<>();
+  private final IntervalWheel intervalTimer = new IntervalWheel();
+  private final WallClockTimer wallClockTimer;
+  private final ClockIndex clockIndex = new ClockIndex();
+  private final SchedulerMetrics metrics = new SchedulerMetrics();
+
+  SimulatedState(SimulatedClock clock) {
+    this.wallClockTimer = new WallClockTimer(clock::nanoTime);
+  }
+
+  void add(Interval ic) {
+    schedulers.put(ic.getID(), ic);
+    (ic.isWallClock() ? wallClockTimer : intervalTimer).schedule(ic);
+  }
+
+  void add(ClockBased cc) {
+    schedulers.put(cc.getID(), cc);
+    clockIndex.addAll(cc);
+  }
+
+  void add(AtBoot oc) {
+    schedulers.put(oc.getID(), oc);
+    atBoot.add(oc);
+  }
+
+  @Override
+  public Settings getSettings() {
+    return settings;
+  }
+
+  @Override
+  public List<AtBoot> getOnceAtBootCommands() {
+    return atBoot;
+  }
+
+  @Override
+  public IntervalTimer getIntervalTimer() {
+    return intervalTimer;
+  }
+
+  @Override
+  public WallClockTimer getWallClockTimer() {
+    return wallClockTimer;
+  }
+
+  @Override
+  public ClockIndex getClockIndex() {
+    return clockIndex;
+  }
+
+  @Override
+  public Scheduler getCommandById(String id) {
+    return schedulers.get(id);
+  }
+
+  @Override
+  public SchedulerMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public void recordRanInstantly(Interval ic) {
+  }
+}
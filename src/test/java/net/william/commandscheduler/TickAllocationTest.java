@@ -0,0 +1,97 @@
+package net.william.commandscheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Bytes the server thread allocates per tick, measured with
+ * ThreadMXBean.getThreadAllocatedBytes after the tick path has been warmed
+ * up, so the JIT has had the chance to remove what escape analysis can.
+ */
+class TickAllocationTest {
+
+  private static final long MIDNIGHT = LocalDate.of(2026, 1, 15)
+      .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+  private static final int WARMUP_TICKS = 200_000;
+  // Stays inside a single minute, the run log rolls over when one starts
+  private static final int MEASURED_TICKS = 1_000;
+
+  private final com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private SimulatedClock clock;
+  private SimulatedState state;
+  private SchedulingEngine engine;
+  private long dispatched;
+
+  @BeforeEach
+  void setUp() {
+    clock = new SimulatedClock(MIDNIGHT);
+    state = new SimulatedState(clock);
+    engine = new SchedulingEngine(state, clock, (owner, command) -> {
+      dispatched++;
+      return true;
+    });
+  }
+
+  private void tick(int ticks) {
+    for (int i = 0; i < ticks; i++) {
+      clock.advanceTick();
+      engine.tick();
+    }
+  }
+
+  /**
+   * Warms up, moves to the start of the next minute and returns the bytes
+   * allocated by the measured ticks.
+   */
+  private long allocatedByTicks() {
+    tick(WARMUP_TICKS);
+    while (clock.currentTimeMillis() % 60_000 != SimulatedClock.MILLIS_PER_TICK) {
+      tick(1);
+    }
+
+    long thread = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(thread);
+    tick(MEASURED_TICKS);
+    return threads.getThreadAllocatedBytes(thread) - before;
+  }
+
+  @Test
+  void idleTickAllocatesNothing() {
+    // None of them come due during the warm-up
+    state.add(new Interval("daily", "say daily", 1, "days", false));
+    Interval wall = new Interval("wall-daily", "say wall", 1, "days", false);
+    wall.setWallClock(true);
+    state.add(wall);
+    ClockBased cc = new ClockBased("noon", "say noon");
+    cc.addTime(12, 0);
+    state.add(cc);
+
+    long bytes = allocatedByTicks();
+
+    assertEquals(0, dispatched);
+    assertEquals(0, bytes, "bytes allocated by " + MEASURED_TICKS + " idle ticks");
+  }
+
+  @Test
+  void firingTickAllocatesNothingBeyondDispatch() {
+    // The sink only counts, so any allocation would come from the engine
+    state.add(new Interval("every-tick", "say tick", 1, "ticks", false));
+    state.add(new Interval("every-second", "say second", 20, "ticks", false));
+    long firedBefore = dispatched;
+
+    long bytes = allocatedByTicks();
+
+    assertTrue(dispatched - firedBefore > WARMUP_TICKS);
+    assertEquals(0, bytes, "bytes allocated by " + MEASURED_TICKS + " firing ticks");
+  }
+}